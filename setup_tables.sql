@@ -27,11 +27,22 @@
  */
 
 /* Execute this SQL file against a database to prepare tables for use with IRCBot. */
+/* The bot creates and migrates these tables itself on startup, so this file is only needed to reset a database. */
 
 DROP TABLE IF EXISTS Quotes;
 DROP TABLE IF EXISTS Seen;
 DROP TABLE IF EXISTS GameStatus;
+DROP TABLE IF EXISTS SchemaVersion;
 
-CREATE TABLE IF NOT EXISTS Quotes(ID INT PRIMARY KEY AUTO_INCREMENT, Nick VARCHAR(255) NOT NULL, Date DATETIME NOT NULL, Channel VARCHAR(32) NOT NULL, Quote VARCHAR(255) NOT NULL);
+CREATE TABLE IF NOT EXISTS Quotes(ID INT PRIMARY KEY AUTO_INCREMENT, Nick VARCHAR(255) NOT NULL, Date DATETIME NOT NULL, Channel VARCHAR(32) NOT NULL, Quote VARCHAR(255) NOT NULL, QuoteHash BIGINT, Ordinal INT, Deleted INT NOT NULL DEFAULT 0);
 CREATE TABLE IF NOT EXISTS Seen(ID INT PRIMARY KEY AUTO_INCREMENT, Nick VARCHAR(255) NOT NULL, Date DATETIME NOT NULL, Channel VARCHAR(32) NOT NULL);
-CREATE TABLE IF NOT EXISTS GameStatus(ID INT PRIMARY KEY AUTO_INCREMENT, Nick VARCHAR(255) NOT NULL, Date DATETIME NOT NULL, Game VARCHAR(255) NOT NULL);
\ No newline at end of file
+CREATE TABLE IF NOT EXISTS GameStatus(ID INT PRIMARY KEY AUTO_INCREMENT, Nick VARCHAR(255) NOT NULL, Date DATETIME NOT NULL, Game VARCHAR(255) NOT NULL);
+
+CREATE UNIQUE INDEX SeenNickChannel ON Seen(Nick, Channel);
+CREATE UNIQUE INDEX GameStatusNick ON GameStatus(Nick);
+CREATE INDEX QuotesChannelHash ON Quotes(Channel, QuoteHash);
+CREATE INDEX QuotesChannelNick ON Quotes(Channel, Nick);
+CREATE UNIQUE INDEX QuotesChannelOrdinal ON Quotes(Channel, Ordinal);
+
+CREATE TABLE IF NOT EXISTS SchemaVersion(Version INT NOT NULL);
+INSERT INTO SchemaVersion(Version) VALUES (5);
\ No newline at end of file
@@ -0,0 +1,138 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the per-message cost of deciding whether a channel message is a shout or
+ * a command, comparing MessageClassifier with the regular expression trimming it
+ * replaced. Run with: mvn -P benchmarks package && java -jar target/benchmarks.jar MessageClassifier
+ * 
+ * @author Ryan Morrison
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageClassifierBenchmark {
+    /*
+     * Class variables.
+     */
+    // A mix of the lines a busy channel sees: chatter, shouts, commands, links and non-English text
+    private static final String[] CORPUS = {
+        "hey, anyone around?",
+        "lol",
+        "I THINK THE SERVER IS DOWN AGAIN",
+        "!who last",
+        "!seen someone",
+        "check this out https://www.youtube.com/watch?v=dQw4w9WgXcQ",
+        "  WHY IS IT ALWAYS MONDAY  ",
+        "brb, getting coffee",
+        ".decide pizza or tacos",
+        "1234567890",
+        "that's what she said",
+        "WHAT DID YOU JUST SAY",
+        "http://i.imgur.com/abc123.jpg is hilarious",
+        "\u00DCBER COOL",
+        "\u65E5\u672C\u8A9E\u306E\u30C6\u30AD\u30B9\u30C8\u3067\u3059",
+        "Does anyone know how to fix a segfault in a JNI call? It only happens on the second run.",
+        "ok",
+        "!who top10",
+        "NO",
+        "\tindented message with a tab",
+    };
+    // Must match the number of messages in the corpus
+    private static final int OPERATIONS = 20;
+
+    /**
+     * Checks that the corpus still has as many messages as JMH is told each
+     * invocation runs, so the time per message isn't misreported
+     */
+    @Setup
+    public void checkCorpus() {
+        if(CORPUS.length != OPERATIONS) throw new IllegalStateException("The corpus has " + CORPUS.length + " messages but OPERATIONS is " + OPERATIONS);
+    }
+
+    /**
+     * Classifies every message in the corpus in a single pass each
+     * @param blackhole consumes the results so they can't be optimized away
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void classifier(Blackhole blackhole) {
+        for(String message : CORPUS) {
+            int classification = MessageClassifier.classify(message);
+            blackhole.consume(MessageClassifier.isShout(classification) && MessageClassifier.getTrimmedLength(classification) > 5);
+            blackhole.consume(MessageClassifier.isCommand(classification));
+        }
+    }
+
+    /**
+     * Classifies every message in the corpus the way onMessage used to
+     * @param blackhole consumes the results so they can't be optimized away
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void regularExpressions(Blackhole blackhole) {
+        for(String message : CORPUS) {
+            blackhole.consume(isUpperCase(message) && message.replaceAll("^\\s+", "").replaceAll("\\s+$", "").length() > 5);
+            blackhole.consume(message.charAt(0) == '!' || message.charAt(0) == '.');
+        }
+    }
+
+    /**
+     * Checks to see if a string is uppercase, as onMessage used to
+     * @param s the string to check
+     * @return true if the string is uppercase, false if it is not
+     */
+    private static boolean isUpperCase(String s) {
+        boolean includesLetter = false;
+        for(int i = 0; i < s.length(); i++) {
+            if(Character.isLetter(s.charAt(i))) includesLetter = true;
+            if(Character.isLowerCase(s.charAt(i))) return false;
+        }
+        return includesLetter;
+    }
+}
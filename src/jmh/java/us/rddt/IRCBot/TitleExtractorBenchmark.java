@@ -0,0 +1,169 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import us.rddt.IRCBot.Implementations.TitleExtractor;
+
+/**
+ * Measures the per-page cost of finding a page's title, comparing TitleExtractor
+ * with decoding the first 8192 characters of the page and searching them for the
+ * title tag. The pages are modelled on real ones: small hand-written pages, pages
+ * whose heads are full of inline scripts and style sheets, and pages without a
+ * title. Run with:
+ * mvn -P benchmarks package && java -jar target/benchmarks.jar TitleExtractor
+ * 
+ * @author Ryan Morrison
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TitleExtractorBenchmark {
+    /*
+     * Class variables.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SCRIPT = "<script type=\"text/javascript\">window.analytics = window.analytics || []; for(var i = 0; i < 10; i++) { analytics.push('<div>' + i + '</div>'); }</script>\n";
+    private static final String STYLE = "<style>body > div.content { margin: 0 auto; width: 960px; } a:hover { color: #336699; }</style>\n";
+    private static final String LINK = "<link rel=\"stylesheet\" type=\"text/css\" href=\"/static/css/site.css?v=1234\" />\n";
+    private static final String TEXT = "<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore.</p>\n";
+
+    // Pages as they come off the wire
+    private static final byte[][] CORPUS = {
+        // A small hand-written page
+        page("<html><head><title>My homepage</title></head><body>" + repeat(TEXT, 20) + "</body></html>"),
+        // A blog with a few stylesheets before the title
+        page("<!DOCTYPE html>\n<html lang=\"en\"><head><meta charset=\"utf-8\">" + repeat(LINK, 10) + "<title>Ten things you didn't know about Java</title></head><body>" + repeat(TEXT, 200) + "</body></html>"),
+        // An old page with an upper case title tag
+        page("<HTML><HEAD><TITLE>Welcome to my site</TITLE></HEAD><BODY>" + repeat(TEXT, 50) + "</BODY></HTML>"),
+        // A news site whose head is full of inline scripts before the title
+        page("<!DOCTYPE html><html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\">" + repeat(SCRIPT, 80) + repeat(STYLE, 40) + "<title lang=\"en\">Breaking news: something happened</title></head><body>" + repeat(TEXT, 400) + "</body></html>"),
+        // A web application with a title after a large inline bundle
+        page("<!doctype html><html><head>" + repeat(SCRIPT, 200) + "<title>Dashboard</title></head><body><div id=\"app\"></div></body></html>"),
+        // A page with no title at all
+        page("<html><head>" + repeat(LINK, 20) + "</head><body>" + repeat(TEXT, 300) + "</body></html>"),
+    };
+    // Must match the number of pages in the corpus
+    private static final int OPERATIONS = 6;
+    // The number of bytes TitleExtractor searches, as configured by default
+    private static final int LIMIT = 65536;
+
+    /**
+     * Checks that the corpus still has as many pages as JMH is told each
+     * invocation runs, so the time per page isn't misreported
+     */
+    @Setup
+    public void checkCorpus() {
+        if(CORPUS.length != OPERATIONS) throw new IllegalStateException("The corpus has " + CORPUS.length + " pages but OPERATIONS is " + OPERATIONS);
+    }
+
+    /**
+     * Finds the title of every page in the corpus with TitleExtractor
+     * @param blackhole consumes the results so they can't be optimized away
+     * @throws IOException if a page could not be read
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void extractor(Blackhole blackhole) throws IOException {
+        for(byte[] page : CORPUS) {
+            blackhole.consume(TitleExtractor.extract(new ByteArrayInputStream(page), null, LIMIT));
+        }
+    }
+
+    /**
+     * Finds the title of every page in the corpus as URLGrabber used to
+     * @param blackhole consumes the results so they can't be optimized away
+     * @throws IOException if a page could not be read
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void stringSearch(Blackhole blackhole) throws IOException {
+        for(byte[] page : CORPUS) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(page), UTF8));
+            int n = 0, totalRead = 0;
+            char[] buf = new char[1024];
+            StringBuilder content = new StringBuilder();
+            while(totalRead < 8192 && (n = reader.read(buf, 0, buf.length)) != -1) {
+                content.append(buf, 0, n);
+                totalRead += n;
+            }
+            reader.close();
+            int titleIndex = content.indexOf("<title>");
+            int titleEndIndex = content.indexOf("</title>");
+            if(titleIndex == -1 || titleEndIndex == -1) {
+                blackhole.consume(null);
+            } else {
+                blackhole.consume(content.substring(titleIndex + 7, titleEndIndex));
+            }
+        }
+    }
+
+    /**
+     * Encodes a page as UTF-8
+     * @param html the page to encode
+     * @return the bytes of the page
+     */
+    private static byte[] page(String html) {
+        return html.getBytes(UTF8);
+    }
+
+    /**
+     * Repeats a piece of markup
+     * @param html the markup to repeat
+     * @param times the number of times to repeat it
+     * @return the repeated markup
+     */
+    private static String repeat(String html, int times) {
+        StringBuilder built = new StringBuilder();
+        for(int i = 0; i < times; i++) built.append(html);
+        return built.toString();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import us.rddt.IRCBot.Implementations.URLExtractor;
+import us.rddt.IRCBot.Implementations.URLExtractor.ExtractedURL;
+
+/**
+ * Measures the per-message cost of finding and classifying URLs, comparing
+ * URLExtractor with compiling the URL pattern for every message and then trying
+ * each site's regular expression in turn. Run with:
+ * mvn -P benchmarks package && java -jar target/benchmarks.jar URLExtractor
+ * 
+ * @author Ryan Morrison
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class URLExtractorBenchmark {
+    /*
+     * Class variables.
+     */
+    // Channel lines, most without links, as the URL stage sees them
+    private static final String[] CORPUS = {
+        "hey, anyone around?",
+        "lol",
+        "check this out http://www.youtube.com/watch?v=dQw4w9WgXcQ",
+        "brb, getting coffee",
+        "http://i.imgur.com/abc123.jpg is hilarious",
+        "that's what she said",
+        "https://twitter.com/jack/status/20 the first tweet",
+        "has anyone read the new post?",
+        "http://www.reddit.com/r/pics/comments/abc12/my_cat/ and http://www.reddit.com/user/someone",
+        "Does anyone know how to fix a segfault in a JNI call? It only happens on the second run.",
+        "docs are at https://docs.oracle.com/javase/7/docs/api/java/util/regex/Pattern.html",
+        "ok",
+    };
+    // Must match the number of messages in the corpus
+    private static final int OPERATIONS = 12;
+
+    // The patterns URLGrabber tried one after another
+    private static final Pattern TWITTER_TWEET = Pattern.compile("https?:\\/\\/(www\\.)?twitter\\.com\\/(?:#!\\/)?(\\w+)\\/status(es)?\\/(\\d+)");
+    private static final Pattern REDDIT_LINK = Pattern.compile("https?:\\/\\/(www.)?reddit\\.com\\/r\\/.+\\/comments\\/.+\\/.+\\/");
+    private static final Pattern REDDIT_USER = Pattern.compile("https?:\\/\\/(www.)?reddit\\.com\\/user\\/.+");
+    private static final Pattern IMGUR_LINK = Pattern.compile("http:\\/\\/(www.)?(i.)?imgur\\.com\\/.+");
+    private static final Pattern YOUTUBE_VIDEO = Pattern.compile("http:\\/\\/(www.)?youtube\\.com\\/watch\\?v=.+");
+
+    /**
+     * Checks that the corpus still has as many messages as JMH is told each
+     * invocation runs, so the time per message isn't misreported
+     */
+    @Setup
+    public void checkCorpus() {
+        if(CORPUS.length != OPERATIONS) throw new IllegalStateException("The corpus has " + CORPUS.length + " messages but OPERATIONS is " + OPERATIONS);
+    }
+
+    /**
+     * Finds and classifies the URLs in every message in the corpus with URLExtractor
+     * @param blackhole consumes the results so they can't be optimized away
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void extractor(Blackhole blackhole) {
+        for(String message : CORPUS) {
+            for(ExtractedURL url : URLExtractor.extract(message, 2)) {
+                blackhole.consume(url.getType());
+            }
+        }
+    }
+
+    /**
+     * Finds and classifies the URLs in every message in the corpus as onMessage and URLGrabber used to
+     * @param blackhole consumes the results so they can't be optimized away
+     * @throws MalformedURLException if a URL in the corpus is invalid
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void regularExpressions(Blackhole blackhole) throws MalformedURLException {
+        for(String message : CORPUS) {
+            int urlCount = 0;
+            Pattern urlPattern = Pattern.compile("\\bhttps?://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]");
+            Matcher urlMatcher = urlPattern.matcher(message);
+            while(urlMatcher.find()) {
+                if(++urlCount > 2) break;
+                blackhole.consume(classify(new URL(urlMatcher.group())));
+            }
+        }
+    }
+
+    /**
+     * Classifies a URL by trying each site's pattern in turn, as URLGrabber used to
+     * @param url the URL to classify
+     * @return the index of the pattern that matched, or -1 if none did
+     */
+    private static int classify(URL url) {
+        if(TWITTER_TWEET.matcher(url.toString()).find()) return 0;
+        if(REDDIT_LINK.matcher(url.toString()).find()) return 1;
+        if(REDDIT_USER.matcher(url.toString()).find()) return 2;
+        if(IMGUR_LINK.matcher(url.toString()).find()) return 3;
+        if(YOUTUBE_VIDEO.matcher(url.toString()).find()) return 4;
+        return -1;
+    }
+}
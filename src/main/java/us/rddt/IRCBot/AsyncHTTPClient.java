@@ -0,0 +1,918 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Makes HTTP requests without holding a thread for each one. Requests are driven by
+ * a small number of selector threads: the socket is connected without blocking, the
+ * TLS handshake is done through an SSLEngine, the request is written and the
+ * response is parsed as its bytes arrive. A listener is given the headers and then
+ * the body piece by piece, and can stop the request as soon as it has what it needs.
+ * <p>
+ * Each request has a deadline. A request still running when its deadline passes is
+ * closed by its selector thread, so a slow server holds nothing but a socket until
+ * then. Host names are resolved through DNSCache on a few resolver threads, as the
+ * JDK has no lookup which doesn't block. The same threads run the key exchange and
+ * certificate work of TLS handshakes, which is too slow for a selector thread.
+ * <p>
+ * Requests ask for the response uncompressed and close the connection afterwards.
+ * This client is meant for reading the start of a response from any site a user
+ * links to; HTTPClient remains the client for the APIs the bot reads whole.
+ * 
+ * @author Ryan Morrison
+ */
+public class AsyncHTTPClient {
+    /*
+     * Class variables.
+     */
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    // The most header bytes a response may have
+    private static final int MAX_HEADER_BYTES = 32768;
+    private static final int BUFFER_SIZE = 16384;
+    private static final Pattern LINE_BREAK = Pattern.compile("\r?\n");
+    private static Loop[] loops;
+    private static ExecutorService resolvers;
+    private static SSLContext sslContext;
+    private static final AtomicInteger nextLoop = new AtomicInteger();
+
+    /**
+     * Receives the response to a request as it is read. Every method is called from
+     * a selector thread, so none of them may block.
+     */
+    public interface Listener {
+        /**
+         * Called when the status line and headers of the response have been read
+         * @param response the response
+         * @return true to read the body, false to close the connection without reading it
+         */
+        boolean headers(Response response);
+
+        /**
+         * Called with each piece of the body as it is read, with any chunked encoding removed
+         * @param data the buffer holding the piece
+         * @param offset the offset of the piece in the buffer
+         * @param length the length of the piece
+         * @return true to keep reading, false to close the connection
+         */
+        boolean body(byte[] data, int offset, int length);
+
+        /**
+         * Called once the whole response has been read, or the listener stopped reading it
+         * @param response the response
+         */
+        void completed(Response response);
+
+        /**
+         * Called instead of completed if the request fails, runs out of time or is cancelled.
+         * A request which runs out of time fails with a SocketTimeoutException.
+         * @param ex the reason the request failed
+         */
+        void failed(Exception ex);
+    }
+
+    /**
+     * The status and headers of a response
+     */
+    public static final class Response {
+        private final URL url;
+        private final InetAddress address;
+        private final int status;
+        private final Map<String,String> headers;
+
+        /**
+         * Class constructor
+         * @param url the URL which was requested
+         * @param address the address the connection was made to
+         * @param status the status code of the response
+         * @param headers the headers of the response, by lower case name
+         */
+        private Response(URL url, InetAddress address, int status, Map<String,String> headers) {
+            this.url = url;
+            this.address = address;
+            this.status = status;
+            this.headers = headers;
+        }
+
+        /**
+         * Returns the URL which was requested
+         * @return the URL which was requested
+         */
+        public URL getURL() {
+            return url;
+        }
+
+        /**
+         * Returns the address of the server the connection was made to
+         * @return the address of the server the connection was made to
+         */
+        public InetAddress getAddress() {
+            return address;
+        }
+
+        /**
+         * Returns the status code of the response
+         * @return the status code of the response
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the value of a header, with the values of repeated headers joined by commas
+         * @param name the name of the header, in any case
+         * @return the value of the header, or null if the response doesn't have it
+         */
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.ENGLISH));
+        }
+    }
+
+    /**
+     * Where a response is up to
+     */
+    private enum State {
+        HEADERS,
+        BODY,
+        CHUNK_SIZE,
+        CHUNK_DATA,
+        CHUNK_END,
+        TRAILERS,
+        DONE
+    }
+
+    /**
+     * A single request and its response. Once it has been handed to its selector
+     * thread, everything but cancel() runs on that thread.
+     */
+    public static final class Call {
+        private final URL url;
+        private final String method;
+        private final Map<String,String> requestHeaders;
+        private final long deadlineAt;
+        private final Listener listener;
+        private final Loop loop;
+        private final String host;
+        private final int port;
+        private final boolean secure;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private SSLEngine engine;
+        private ByteBuffer netIn;
+        private ByteBuffer netOut;
+        private ByteBuffer appIn;
+        private ByteBuffer appOut;
+        private InetAddress address;
+        private Response response;
+        private boolean finished = false;
+        private boolean closedByServer = false;
+        // Set while the TLS engine's delegated tasks run on a resolver thread
+        private boolean runningTasks = false;
+        // Parsing the response
+        private State state = State.HEADERS;
+        private byte[] headerBytes = new byte[1024];
+        private int headerLength = 0;
+        private long remaining = -1;
+        private final StringBuilder line = new StringBuilder();
+
+        /**
+         * Class constructor
+         * @param url the URL to request
+         * @param method the request method
+         * @param requestHeaders extra headers to send, or null for none
+         * @param deadlineAt the value of System.nanoTime() by which the request must finish
+         * @param listener the listener to give the response to
+         * @param loop the selector thread to run the request on
+         */
+        private Call(URL url, String method, Map<String,String> requestHeaders, long deadlineAt, Listener listener, Loop loop) {
+            this.url = url;
+            this.method = method;
+            this.requestHeaders = requestHeaders;
+            this.deadlineAt = deadlineAt;
+            this.listener = listener;
+            this.loop = loop;
+            this.host = url.getHost();
+            this.secure = url.getProtocol().equalsIgnoreCase("https");
+            this.port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+        }
+
+        /**
+         * Cancels the request. The listener is told it failed, unless it has already finished.
+         */
+        public void cancel() {
+            loop.execute(new Runnable() {
+                public void run() {
+                    fail(new IOException("Request was cancelled"));
+                }
+            });
+        }
+
+        /**
+         * Starts the request by looking up the host on a resolver thread
+         */
+        private void start() {
+            loop.calls.add(this);
+            try {
+                resolvers.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            final InetAddress resolved = DNSCache.resolve(host);
+                            loop.execute(new Runnable() {
+                                public void run() {
+                                    connect(resolved);
+                                }
+                            });
+                        } catch (final UnknownHostException ex) {
+                            loop.execute(new Runnable() {
+                                public void run() {
+                                    fail(ex);
+                                }
+                            });
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                fail(new IOException("The HTTP client has been shut down"));
+            }
+        }
+
+        /**
+         * Starts connecting to the server
+         * @param resolved the address of the server
+         */
+        private void connect(InetAddress resolved) {
+            if(finished) return;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                boolean connected = channel.connect(new InetSocketAddress(resolved, port));
+                key = channel.register(loop.selector, connected ? 0 : SelectionKey.OP_CONNECT, this);
+                if(connected) connected();
+            } catch (IOException ex) {
+                fail(ex);
+            } catch (RuntimeException ex) {
+                fail(ex);
+            }
+        }
+
+        /**
+         * Prepares the request once the connection has been made
+         * @throws IOException if the request cannot be sent
+         */
+        private void connected() throws IOException {
+            // The address of the socket actually used, rather than of a separate lookup
+            address = channel.socket().getInetAddress();
+            byte[] request = buildRequest();
+            if(secure) {
+                engine = sslContext.createSSLEngine(host, port);
+                engine.setUseClientMode(true);
+                netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+                appOut = ByteBuffer.wrap(request);
+                engine.beginHandshake();
+            } else {
+                netIn = ByteBuffer.allocate(BUFFER_SIZE);
+                netOut = ByteBuffer.allocate(Math.max(BUFFER_SIZE, request.length));
+                netOut.put(request);
+            }
+            pump();
+        }
+
+        /**
+         * Builds the request line and headers
+         * @return the request to send
+         */
+        private byte[] buildRequest() {
+            StringBuilder request = new StringBuilder();
+            String target = url.getFile();
+            request.append(method).append(' ').append(target.length() == 0 ? "/" : target).append(" HTTP/1.1\r\n");
+            request.append("Host: ").append(host);
+            if(url.getPort() != -1 && url.getPort() != url.getDefaultPort()) request.append(':').append(url.getPort());
+            request.append("\r\n");
+            request.append("User-Agent: ").append(Configuration.getUserAgent()).append("\r\n");
+            request.append("Accept: */*\r\n");
+            request.append("Accept-Encoding: identity\r\n");
+            request.append("Connection: close\r\n");
+            if(requestHeaders != null) {
+                for(Map.Entry<String,String> header : requestHeaders.entrySet()) {
+                    request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+                }
+            }
+            request.append("\r\n");
+            return request.toString().getBytes(ISO_8859_1);
+        }
+
+        /**
+         * Handles the socket becoming ready
+         * @param readyKey the key of the socket
+         */
+        private void ready(SelectionKey readyKey) {
+            try {
+                if(readyKey.isConnectable()) {
+                    channel.finishConnect();
+                    connected();
+                } else {
+                    pump();
+                }
+            } catch (IOException ex) {
+                fail(ex);
+            } catch (CancelledKeyException ex) {
+                // The request was closed while the socket was being selected
+            } catch (RuntimeException ex) {
+                // Don't leave the request hanging if its listener or the TLS engine threw
+                fail(ex);
+            }
+        }
+
+        /**
+         * Moves as much data as the socket allows in both directions
+         * @throws IOException if the socket fails or the response is malformed
+         */
+        private void pump() throws IOException {
+            if(finished) return;
+            int n;
+            while((n = channel.read(netIn)) > 0);
+            boolean endOfStream = (n == -1);
+            if(engine == null) {
+                netIn.flip();
+                boolean more = deliver(netIn);
+                netIn.clear();
+                if(!more) return;
+            } else {
+                if(!processTLS()) return;
+            }
+            flush();
+            if(endOfStream || closedByServer) {
+                endOfStream();
+                return;
+            }
+            if(runningTasks) {
+                // Leave anything read for the engine once its tasks have finished
+                key.interestOps(netOut.position() > 0 ? SelectionKey.OP_WRITE : 0);
+            } else {
+                key.interestOps(SelectionKey.OP_READ | (netOut.position() > 0 ? SelectionKey.OP_WRITE : 0));
+            }
+        }
+
+        /**
+         * Carries on with the request after the TLS engine's delegated tasks have finished
+         */
+        private void resume() {
+            runningTasks = false;
+            try {
+                pump();
+            } catch (IOException ex) {
+                fail(ex);
+            } catch (CancelledKeyException ex) {
+                // The request was closed while the tasks were running
+            } catch (RuntimeException ex) {
+                fail(ex);
+            }
+        }
+
+        /**
+         * Runs the TLS engine's delegated tasks on a resolver thread, then resumes the
+         * request on its selector thread
+         * @throws IOException if the client has been shut down
+         */
+        private void runDelegatedTasks() throws IOException {
+            runningTasks = true;
+            try {
+                resolvers.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            Runnable task;
+                            while((task = engine.getDelegatedTask()) != null) task.run();
+                        } catch (final RuntimeException ex) {
+                            loop.execute(new Runnable() {
+                                public void run() {
+                                    fail(ex);
+                                }
+                            });
+                            return;
+                        }
+                        loop.execute(new Runnable() {
+                            public void run() {
+                                resume();
+                            }
+                        });
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                throw new IOException("The HTTP client has been shut down");
+            }
+        }
+
+        /**
+         * Runs the TLS handshake, encrypts the request and decrypts the response
+         * @return true if the request is still running, false if it has finished
+         * @throws IOException if the TLS session fails
+         */
+        private boolean processTLS() throws IOException {
+            if(runningTasks) return true;
+            while(true) {
+                HandshakeStatus handshake = engine.getHandshakeStatus();
+                if(handshake == HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                    return true;
+                }
+                boolean handshaking = handshake != HandshakeStatus.NOT_HANDSHAKING && handshake != HandshakeStatus.FINISHED;
+                if(handshake == HandshakeStatus.NEED_WRAP || (!handshaking && appOut.hasRemaining())) {
+                    SSLEngineResult result = engine.wrap(appOut, netOut);
+                    if(result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        // Send what has been encrypted so far, and carry on when the socket can take more
+                        flush();
+                        if(netOut.position() > 0) return true;
+                        continue;
+                    }
+                    if(result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        closedByServer = true;
+                        return true;
+                    }
+                    continue;
+                }
+                netIn.flip();
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                netIn.compact();
+                switch(result.getStatus()) {
+                case BUFFER_UNDERFLOW:
+                    // Wait for the rest of the record
+                    return true;
+                case BUFFER_OVERFLOW:
+                    if(!deliverApplicationData()) return false;
+                    continue;
+                case CLOSED:
+                    if(!deliverApplicationData()) return false;
+                    closedByServer = true;
+                    return true;
+                default:
+                    if(result.bytesProduced() > 0 && !deliverApplicationData()) return false;
+                    if(result.bytesConsumed() == 0 && result.bytesProduced() == 0 && engine.getHandshakeStatus() != HandshakeStatus.NEED_TASK && engine.getHandshakeStatus() != HandshakeStatus.NEED_WRAP) return true;
+                    continue;
+                }
+            }
+        }
+
+        /**
+         * Gives the decrypted data to the response parser
+         * @return true if the request is still running, false if it has finished
+         * @throws IOException if the response is malformed
+         */
+        private boolean deliverApplicationData() throws IOException {
+            appIn.flip();
+            boolean more = deliver(appIn);
+            appIn.clear();
+            return more;
+        }
+
+        /**
+         * Writes as much of the pending data as the socket will take
+         * @throws IOException if the socket fails
+         */
+        private void flush() throws IOException {
+            if(netOut.position() == 0) return;
+            netOut.flip();
+            channel.write(netOut);
+            netOut.compact();
+        }
+
+        /**
+         * Gives data read from the server to the response parser
+         * @param buffer the data read
+         * @return true if the request is still running, false if it has finished
+         * @throws IOException if the response is malformed
+         */
+        private boolean deliver(ByteBuffer buffer) throws IOException {
+            if(!buffer.hasRemaining()) return true;
+            if(parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())) return true;
+            complete();
+            return false;
+        }
+
+        /**
+         * Parses the next part of the response
+         * @param data the buffer holding the part
+         * @param offset the offset of the part in the buffer
+         * @param length the length of the part
+         * @return true if more of the response is wanted, false if it is done
+         * @throws IOException if the response is malformed
+         */
+        private boolean parse(byte[] data, int offset, int length) throws IOException {
+            int i = offset, end = offset + length;
+            while(i < end) {
+                switch(state) {
+                case HEADERS:
+                    byte b = data[i++];
+                    if(headerLength == headerBytes.length) {
+                        if(headerLength >= MAX_HEADER_BYTES) throw new IOException("Response headers are too large");
+                        headerBytes = Arrays.copyOf(headerBytes, headerLength * 2);
+                    }
+                    headerBytes[headerLength++] = b;
+                    if(b == '\n' && isEndOfHeaders() && !readHeaders()) return false;
+                    break;
+                case BODY:
+                case CHUNK_DATA:
+                    int n = (remaining < 0) ? end - i : (int)Math.min(end - i, remaining);
+                    if(!listener.body(data, i, n)) return false;
+                    i += n;
+                    if(remaining >= 0) {
+                        remaining -= n;
+                        if(remaining == 0) {
+                            if(state == State.BODY) return false;
+                            state = State.CHUNK_END;
+                        }
+                    }
+                    break;
+                case CHUNK_SIZE:
+                case CHUNK_END:
+                case TRAILERS:
+                    char c = (char)(data[i++] & 0xff);
+                    if(c != '\n') {
+                        if(c != '\r') line.append(c);
+                        if(line.length() > 1024) throw new IOException("Malformed chunked response");
+                        break;
+                    }
+                    if(!readLine()) return false;
+                    break;
+                default:
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Handles a complete line of the chunked encoding
+         * @return true if more of the response is wanted, false if it is done
+         * @throws IOException if the line is malformed
+         */
+        private boolean readLine() throws IOException {
+            String text = line.toString().trim();
+            line.setLength(0);
+            if(state == State.CHUNK_END) {
+                state = State.CHUNK_SIZE;
+            } else if(state == State.CHUNK_SIZE) {
+                int extension = text.indexOf(';');
+                if(extension != -1) text = text.substring(0, extension).trim();
+                try {
+                    remaining = Long.parseLong(text, 16);
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Malformed chunk size: " + text);
+                }
+                state = (remaining == 0) ? State.TRAILERS : State.CHUNK_DATA;
+            } else if(text.length() == 0) {
+                // The blank line after the trailers ends the response
+                state = State.DONE;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Checks whether the header buffer ends with a blank line
+         * @return true if the headers are complete, false if they are not
+         */
+        private boolean isEndOfHeaders() {
+            if(headerLength >= 2 && headerBytes[headerLength - 2] == '\n') return true;
+            return headerLength >= 4 && headerBytes[headerLength - 2] == '\r' && headerBytes[headerLength - 3] == '\n';
+        }
+
+        /**
+         * Parses the status line and headers, tells the listener about them and works out how the body is sent
+         * @return true if the body is wanted, false if the response is done
+         * @throws IOException if the headers are malformed
+         */
+        private boolean readHeaders() throws IOException {
+            String[] lines = LINE_BREAK.split(new String(headerBytes, 0, headerLength, ISO_8859_1));
+            headerLength = 0;
+            String[] statusLine = lines[0].split(" ", 3);
+            if(statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) throw new IOException("Malformed response from the server");
+            int status;
+            try {
+                status = Integer.parseInt(statusLine[1]);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Malformed response from the server");
+            }
+            // Skip interim responses and wait for the real one
+            if(status >= 100 && status < 200) return true;
+            Map<String,String> headers = new HashMap<String,String>();
+            for(int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if(colon <= 0) continue;
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+                String value = lines[i].substring(colon + 1).trim();
+                String previous = headers.get(name);
+                headers.put(name, (previous == null) ? value : previous + ", " + value);
+            }
+            response = new Response(url, address, status, headers);
+            if(!listener.headers(response)) return false;
+            // Responses to HEAD and these statuses never have a body
+            if(method.equals("HEAD") || status == 204 || status == 304) return false;
+            String transferEncoding = response.getHeader("Transfer-Encoding");
+            String contentLength = response.getHeader("Content-Length");
+            if(transferEncoding != null && transferEncoding.toLowerCase(Locale.ENGLISH).contains("chunked")) {
+                state = State.CHUNK_SIZE;
+            } else if(contentLength != null) {
+                try {
+                    remaining = Long.parseLong(contentLength.trim());
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Malformed Content-Length: " + contentLength);
+                }
+                if(remaining == 0) return false;
+                state = State.BODY;
+            } else {
+                // The body runs until the server closes the connection
+                remaining = -1;
+                state = State.BODY;
+            }
+            return true;
+        }
+
+        /**
+         * Handles the server closing the connection
+         */
+        private void endOfStream() {
+            if(response == null) fail(new IOException("The server closed the connection without responding"));
+            else complete();
+        }
+
+        /**
+         * Closes the connection and tells the listener the response has been read
+         */
+        private void complete() {
+            if(finished) return;
+            finished = true;
+            close();
+            try {
+                listener.completed(response);
+            } catch (RuntimeException ex) {
+                Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+            }
+        }
+
+        /**
+         * Closes the connection and tells the listener the request failed
+         * @param ex the reason the request failed
+         */
+        private void fail(Exception ex) {
+            if(finished) return;
+            finished = true;
+            close();
+            try {
+                listener.failed(ex);
+            } catch (RuntimeException rex) {
+                Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(rex));
+            }
+        }
+
+        /**
+         * Closes the connection
+         */
+        private void close() {
+            loop.calls.remove(this);
+            if(key != null) key.cancel();
+            if(channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    // Nothing more can be done with it
+                }
+            }
+        }
+    }
+
+    /**
+     * A selector thread and the requests it is running
+     */
+    private static final class Loop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        // Only used by the selector thread
+        private final Set<Call> calls = new HashSet<Call>();
+        private volatile boolean running = true;
+
+        /**
+         * Class constructor
+         * @throws IOException if the selector cannot be opened
+         */
+        private Loop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Runs a task on the selector thread
+         * @param task the task to run
+         */
+        private void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Method that executes upon thread start
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            while(running) {
+                try {
+                    selector.select(getTimeout());
+                    Runnable task;
+                    while((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while(selected.hasNext()) {
+                        SelectionKey key = selected.next();
+                        selected.remove();
+                        ((Call)key.attachment()).ready(key);
+                    }
+                    expire();
+                } catch (Exception ex) {
+                    // Keep the other requests running whatever happened to this one
+                    Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                }
+            }
+            for(Call call : new ArrayList<Call>(calls)) {
+                call.fail(new IOException("The HTTP client has been shut down"));
+            }
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                // We're shutting down anyway
+            }
+        }
+
+        /**
+         * Returns how long to wait for the sockets before the next deadline passes
+         * @return the time in milliseconds to wait, or 0 to wait until woken
+         */
+        private long getTimeout() {
+            if(calls.isEmpty()) return 0;
+            long now = System.nanoTime();
+            long earliest = Long.MAX_VALUE;
+            for(Call call : calls) {
+                earliest = Math.min(earliest, call.deadlineAt - now);
+            }
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(earliest) + 1);
+        }
+
+        /**
+         * Fails every request whose deadline has passed, closing its connection
+         */
+        private void expire() {
+            long now = System.nanoTime();
+            for(Call call : new ArrayList<Call>(calls)) {
+                if(now - call.deadlineAt >= 0) call.fail(new SocketTimeoutException("Timed out waiting for the server"));
+            }
+        }
+    }
+
+    /**
+     * Class constructor. Not used, as the client only has static methods.
+     */
+    private AsyncHTTPClient() {
+    }
+
+    /**
+     * Starts the selector and resolver threads
+     * @throws IOException if a selector cannot be opened
+     */
+    public static synchronized void start() throws IOException {
+        if(loops != null) return;
+        try {
+            // Links are fetched from whatever sites users post, including ones with self-signed certificates
+            TrustManager[] trustAllCerts = new TrustManager[] {
+                    new X509TrustManager() {
+                        public X509Certificate[] getAcceptedIssuers() {
+                            return new X509Certificate[0];
+                        }
+                        public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                        }
+                        public void checkServerTrusted(X509Certificate[] certs, String authType) {
+                        }
+                    }
+            };
+            sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustAllCerts, new SecureRandom());
+        } catch (Exception ex) {
+            throw new IOException("Unable to set up TLS: " + ex.getMessage());
+        }
+        resolvers = Executors.newFixedThreadPool(Configuration.getHttpResolverThreads(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AsyncHTTPClient-Resolver-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Loop[] started = new Loop[Configuration.getHttpSelectorThreads()];
+        for(int i = 0; i < started.length; i++) {
+            started[i] = new Loop();
+            Thread thread = new Thread(started[i], "AsyncHTTPClient-Selector-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        loops = started;
+    }
+
+    /**
+     * Stops the selector and resolver threads, failing any requests still running
+     */
+    public static synchronized void shutdown() {
+        if(loops == null) return;
+        for(Loop loop : loops) {
+            loop.running = false;
+            loop.selector.wakeup();
+        }
+        resolvers.shutdownNow();
+        loops = null;
+    }
+
+    /**
+     * Sends a request. The listener is called from a selector thread as the response is read.
+     * @param url the URL to request, which must be http or https
+     * @param method the request method
+     * @param headers extra headers to send, or null for none
+     * @param deadlineAt the value of System.nanoTime() by which the request must finish
+     * @param listener the listener to give the response to
+     * @return the request, which can be used to cancel it
+     */
+    public static Call send(URL url, String method, Map<String,String> headers, long deadlineAt, Listener listener) {
+        Loop[] current = loops;
+        if(current == null) throw new IllegalStateException("The HTTP client has not been started");
+        final Call call = new Call(url, method, headers, deadlineAt, listener, current[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % current.length]);
+        call.loop.execute(new Runnable() {
+            public void run() {
+                call.start();
+            }
+        });
+        return call;
+    }
+}
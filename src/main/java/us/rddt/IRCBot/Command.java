@@ -0,0 +1,161 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.events.MessageEvent;
+
+import us.rddt.IRCBot.Enums.Permissions;
+import us.rddt.IRCBot.Enums.Upstreams;
+
+/**
+ * Describes a command the bot responds to: the name and aliases it is invoked
+ * by, the function that can disable it, who is allowed to use it and how to
+ * create the handler that carries it out.
+ * 
+ * @see us.rddt.IRCBot.CommandRegistry
+ * @author Ryan Morrison
+ */
+public class Command {
+    /**
+     * Creates the handler for a command when it is invoked
+     */
+    public interface Factory {
+        /**
+         * Creates the handler for a command
+         * @param event the MessageEvent that invoked the command
+         * @return the handler to dispatch, or null if there is nothing to do
+         */
+        public Runnable create(MessageEvent<PircBotX> event);
+    }
+
+    /*
+     * Class variables.
+     */
+    private String name;
+    private String[] aliases;
+    private String function;
+    private int functionIndex = -1;
+    private Permissions permission;
+    private Upstreams upstream;
+    private boolean requiresArgument;
+    private Factory factory;
+
+    /**
+     * Class constructor
+     * @param name the name of the command, such as !kick or !who delete
+     * @param aliases any alternative names for the command, such as .k
+     * @param function the function listed in disabled_functions to disable the command, or null if it can't be disabled
+     * @param permission the permission level required to use the command
+     * @param upstream the outside service the command's handler talks to, or null if it doesn't
+     * @param requiresArgument true if the command must be followed by an argument, false if it takes none
+     * @param factory the factory to create the command's handler
+     */
+    public Command(String name, String[] aliases, String function, Permissions permission, Upstreams upstream, boolean requiresArgument, Factory factory) {
+        this.name = name;
+        this.aliases = aliases;
+        this.function = function;
+        this.permission = permission;
+        this.upstream = upstream;
+        this.requiresArgument = requiresArgument;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the name of the command
+     * @return the name of the command
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the alternative names of the command
+     * @return the alternative names of the command
+     */
+    public String[] getAliases() {
+        return aliases;
+    }
+
+    /**
+     * Returns the function that disables the command
+     * @return the function that disables the command, or null if it can't be disabled
+     */
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the index of the command's function in the registry
+     * @return the index of the command's function, or -1 if it can't be disabled
+     */
+    int getFunctionIndex() {
+        return functionIndex;
+    }
+
+    /**
+     * Sets the index of the command's function in the registry
+     * @param functionIndex the index of the command's function
+     */
+    void setFunctionIndex(int functionIndex) {
+        this.functionIndex = functionIndex;
+    }
+
+    /**
+     * Returns the permission level required to use the command
+     * @return the permission level required to use the command
+     */
+    public Permissions getPermission() {
+        return permission;
+    }
+
+    /**
+     * Returns the outside service the command's handler talks to
+     * @return the outside service the command's handler talks to, or null if it doesn't
+     */
+    public Upstreams getUpstream() {
+        return upstream;
+    }
+
+    /**
+     * Returns if the command must be followed by an argument
+     * @return true if the command must be followed by an argument, false if it takes none
+     */
+    public boolean requiresArgument() {
+        return requiresArgument;
+    }
+
+    /**
+     * Returns the factory to create the command's handler
+     * @return the factory to create the command's handler
+     */
+    public Factory getFactory() {
+        return factory;
+    }
+}
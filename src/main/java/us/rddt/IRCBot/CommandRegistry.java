@@ -0,0 +1,157 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps command names to the commands they invoke. Messages are parsed once and
+ * the command looked up by its first word (or first two words, for commands such
+ * as !who delete) rather than testing every command in turn. Functions disabled
+ * in the configuration are kept in a bitset so checking them costs a single lookup.
+ * The command table is replaced as a whole when a command is registered, so looking
+ * up a command never takes a lock.
+ * 
+ * @author Ryan Morrison
+ */
+public class CommandRegistry {
+    /*
+     * Class variables.
+     */
+    private volatile Map<String,Command> commands = Collections.emptyMap();
+    private final Map<String,Integer> functions = new ConcurrentHashMap<String,Integer>();
+    private volatile BitSet disabledFunctions = new BitSet();
+
+    /**
+     * Registers a command under its name and all of its aliases
+     * @param command the command to register
+     * @throws IllegalArgumentException if the name or an alias is already registered
+     */
+    public synchronized void register(Command command) throws IllegalArgumentException {
+        // Build the new table on the side and publish it once it is complete
+        Map<String,Command> updated = new HashMap<String,Command>(commands);
+        put(updated, command.getName(), command);
+        if(command.getAliases() != null) {
+            for(String alias : command.getAliases()) {
+                put(updated, alias, command);
+            }
+        }
+        if(command.getFunction() != null) command.setFunctionIndex(getFunctionIndex(command.getFunction()));
+        commands = Collections.unmodifiableMap(updated);
+    }
+
+    /**
+     * Maps a single name to a command
+     * @param table the command table to add the name to
+     * @param name the name to map
+     * @param command the command to map the name to
+     * @throws IllegalArgumentException if the name is already registered
+     */
+    private static void put(Map<String,Command> table, String name, Command command) throws IllegalArgumentException {
+        if(table.containsKey(name)) throw new IllegalArgumentException("Command " + name + " is already registered");
+        table.put(name, command);
+    }
+
+    /**
+     * Returns the index of a function in the disabled functions bitset, assigning one if needed
+     * @param function the function to return the index of
+     * @return the index of the function
+     */
+    private synchronized int getFunctionIndex(String function) {
+        Integer index = functions.get(function);
+        if(index == null) {
+            index = functions.size();
+            functions.put(function, index);
+        }
+        return index;
+    }
+
+    /**
+     * Updates which functions are disabled
+     * @param disabled the functions to disable
+     */
+    public synchronized void setDisabledFunctions(List<String> disabled) {
+        BitSet bits = new BitSet();
+        for(String function : disabled) {
+            if(!function.trim().isEmpty()) bits.set(getFunctionIndex(function.trim()));
+        }
+        disabledFunctions = bits;
+    }
+
+    /**
+     * Returns if a function is enabled
+     * @param function the function to check
+     * @return true if the function is enabled, false if it has been disabled
+     */
+    public boolean isEnabled(String function) {
+        Integer index = functions.get(function);
+        return index == null || !disabledFunctions.get(index);
+    }
+
+    /**
+     * Returns if a command is enabled
+     * @param command the command to check
+     * @return true if the command is enabled, false if its function has been disabled
+     */
+    public boolean isEnabled(Command command) {
+        return command.getFunctionIndex() < 0 || !disabledFunctions.get(command.getFunctionIndex());
+    }
+
+    /**
+     * Looks up the command a message invokes
+     * @param message the message to parse
+     * @return the command the message invokes, or null if it doesn't invoke one
+     */
+    public Command lookup(String message) {
+        int firstSpace = message.indexOf(' ');
+        if(firstSpace != -1) {
+            // Try the first two words, for commands such as !who delete
+            int secondSpace = message.indexOf(' ', firstSpace + 1);
+            Command command = get(secondSpace == -1 ? message : message.substring(0, secondSpace));
+            if(command != null && command.requiresArgument() == (secondSpace != -1)) return command;
+        }
+        Command command = get(firstSpace == -1 ? message : message.substring(0, firstSpace));
+        if(command != null && command.requiresArgument() == (firstSpace != -1)) return command;
+        return null;
+    }
+
+    /**
+     * Returns the command registered under a name
+     * @param name the name of the command
+     * @return the command, or null if no command has the name
+     */
+    private Command get(String name) {
+        return commands.get(name);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Commands;
+
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.events.MessageEvent;
+
+import us.rddt.IRCBot.Command;
+import us.rddt.IRCBot.CommandHandler;
+import us.rddt.IRCBot.CommandRegistry;
+import us.rddt.IRCBot.Enums.Permissions;
+import us.rddt.IRCBot.Handlers.GameStatus;
+
+/**
+ * Provides the !status command for setting and querying the games users are playing.
+ * 
+ * @see us.rddt.IRCBot.Handlers.GameStatus
+ * @author Ryan Morrison
+ */
+public class GameStatusCommands implements CommandHandler {
+    /**
+     * Registers the commands provided by this handler
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.CommandHandler#registerCommands(us.rddt.IRCBot.CommandRegistry)
+     */
+    public void registerCommands(CommandRegistry registry) {
+        registry.register(new Command("!status", null, "gamestatus", Permissions.ANYONE, null, true, new Command.Factory() {
+            public Runnable create(MessageEvent<PircBotX> event) {
+                return new GameStatus(event);
+            }
+        }));
+    }
+}
@@ -97,6 +97,37 @@ public class Configuration {
     private static String log_output;
     
     private static String user_agent;
+    
+    private static String dispatch_mode;
+    private static int dispatch_pool_size;
+    private static int dispatch_queue_size;
+    private static int dispatch_upstream_limit;
+    private static int outbound_burst;
+    private static long outbound_interval;
+    private static int outbound_queue_size;
+    private static long mode_batch_window;
+    private static int database_pool_min_size;
+    private static int database_pool_max_size;
+    private static long database_pool_idle_timeout;
+    private static long database_pool_timeout;
+    private static String database_pool_validation_query;
+    private static int database_statement_cache_size;
+    private static long seen_flush_interval;
+    private static int seen_flush_size;
+    private static int http_connect_timeout;
+    private static int http_read_timeout;
+    private static int http_max_connections;
+    private static int http_selector_threads;
+    private static int http_resolver_threads;
+    private static int dns_cache_size;
+    private static long dns_cache_ttl;
+    private static long dns_cache_negative_ttl;
+    private static int title_fetch_max_requests;
+    private static long title_fetch_deadline;
+    private static int title_max_bytes;
+    private static int title_cache_size;
+    private static long title_cache_ttl;
+    private static long title_cache_negative_ttl;
 
     /**
      * Loads the configuration provided via a properties file
@@ -133,6 +164,36 @@ public class Configuration {
         }
         log_output = config.getProperty("log_output");
         user_agent = config.getProperty("user_agent");
+        dispatch_mode = config.getProperty("dispatch_mode", "pool");
+        dispatch_pool_size = Integer.parseInt(config.getProperty("dispatch_pool_size", "16"));
+        dispatch_queue_size = Integer.parseInt(config.getProperty("dispatch_queue_size", "256"));
+        dispatch_upstream_limit = Integer.parseInt(config.getProperty("dispatch_upstream_limit", "4"));
+        outbound_burst = Integer.parseInt(config.getProperty("outbound_burst", "5"));
+        outbound_interval = Long.parseLong(config.getProperty("outbound_interval", "1000"));
+        outbound_queue_size = Integer.parseInt(config.getProperty("outbound_queue_size", "100"));
+        mode_batch_window = Long.parseLong(config.getProperty("mode_batch_window", "250"));
+        database_pool_min_size = Integer.parseInt(config.getProperty("database_pool_min_size", "1"));
+        database_pool_max_size = Integer.parseInt(config.getProperty("database_pool_max_size", "8"));
+        database_pool_idle_timeout = Long.parseLong(config.getProperty("database_pool_idle_timeout", "300000"));
+        database_pool_timeout = Long.parseLong(config.getProperty("database_pool_timeout", "5000"));
+        database_pool_validation_query = config.getProperty("database_pool_validation_query", "SELECT 1");
+        database_statement_cache_size = Integer.parseInt(config.getProperty("database_statement_cache_size", "32"));
+        seen_flush_interval = Long.parseLong(config.getProperty("seen_flush_interval", "10000"));
+        seen_flush_size = Integer.parseInt(config.getProperty("seen_flush_size", "500"));
+        http_connect_timeout = Integer.parseInt(config.getProperty("http_connect_timeout", "5000"));
+        http_read_timeout = Integer.parseInt(config.getProperty("http_read_timeout", "10000"));
+        http_max_connections = Integer.parseInt(config.getProperty("http_max_connections", "5"));
+        http_selector_threads = Integer.parseInt(config.getProperty("http_selector_threads", "1"));
+        http_resolver_threads = Integer.parseInt(config.getProperty("http_resolver_threads", "2"));
+        dns_cache_size = Integer.parseInt(config.getProperty("dns_cache_size", "256"));
+        dns_cache_ttl = Long.parseLong(config.getProperty("dns_cache_ttl", "300000"));
+        dns_cache_negative_ttl = Long.parseLong(config.getProperty("dns_cache_negative_ttl", "10000"));
+        title_fetch_max_requests = Integer.parseInt(config.getProperty("title_fetch_max_requests", "64"));
+        title_fetch_deadline = Long.parseLong(config.getProperty("title_fetch_deadline", "15000"));
+        title_max_bytes = Integer.parseInt(config.getProperty("title_max_bytes", "65536"));
+        title_cache_size = Integer.parseInt(config.getProperty("title_cache_size", "512"));
+        title_cache_ttl = Long.parseLong(config.getProperty("title_cache_ttl", "3600000"));
+        title_cache_negative_ttl = Long.parseLong(config.getProperty("title_cache_negative_ttl", "60000"));
     }
 
     /**
@@ -357,6 +418,246 @@ public class Configuration {
         return "Mozilla/5.0 (Windows NT 6.1; rv:6.0) Gecko/20110814 Firefox/6.0";
     }
     
+    /**
+     * Returns how handlers should be run, either on a worker pool or on virtual threads
+     * @return the dispatch mode (pool or virtual)
+     */
+    public static String getDispatchMode() {
+        return dispatch_mode;
+    }
+    
+    /**
+     * Returns the number of worker threads the dispatcher may use
+     * @return the number of worker threads the dispatcher may use
+     */
+    public static int getDispatchPoolSize() {
+        return dispatch_pool_size;
+    }
+    
+    /**
+     * Returns the number of handlers that may be queued before new ones are dropped
+     * @return the number of handlers that may be queued before new ones are dropped
+     */
+    public static int getDispatchQueueSize() {
+        return dispatch_queue_size;
+    }
+    
+    /**
+     * Returns the number of requests that may be made to a single outside service at once
+     * @return the number of requests that may be made to a single outside service at once
+     */
+    public static int getDispatchUpstreamLimit() {
+        return dispatch_upstream_limit;
+    }
+    
+    /**
+     * Returns the number of lines that may be sent to the server in a burst
+     * @return the number of lines that may be sent to the server in a burst
+     */
+    public static int getOutboundBurst() {
+        return outbound_burst;
+    }
+    
+    /**
+     * Returns the time in milliseconds it takes to earn back one line of the burst
+     * @return the time in milliseconds it takes to earn back one line of the burst
+     */
+    public static long getOutboundInterval() {
+        return outbound_interval;
+    }
+    
+    /**
+     * Returns the maximum number of lines waiting in each outbound lane
+     * @return the maximum number of lines waiting in each outbound lane
+     */
+    public static int getOutboundQueueSize() {
+        return outbound_queue_size;
+    }
+    
+    /**
+     * Returns the time in milliseconds mode changes are collected for before being sent
+     * @return the time in milliseconds mode changes are collected for before being sent
+     */
+    public static long getModeBatchWindow() {
+        return mode_batch_window;
+    }
+    
+    /**
+     * Returns the number of database connections to keep open even when idle
+     * @return the number of database connections to keep open even when idle
+     */
+    public static int getDatabasePoolMinSize() {
+        return database_pool_min_size;
+    }
+    
+    /**
+     * Returns the maximum number of database connections open at once
+     * @return the maximum number of database connections open at once
+     */
+    public static int getDatabasePoolMaxSize() {
+        return database_pool_max_size;
+    }
+    
+    /**
+     * Returns the time in milliseconds a database connection may be idle before being closed
+     * @return the time in milliseconds a database connection may be idle before being closed
+     */
+    public static long getDatabasePoolIdleTimeout() {
+        return database_pool_idle_timeout;
+    }
+    
+    /**
+     * Returns the time in milliseconds to wait for a database connection to become available
+     * @return the time in milliseconds to wait for a database connection to become available
+     */
+    public static long getDatabasePoolTimeout() {
+        return database_pool_timeout;
+    }
+    
+    /**
+     * Returns the query used to check that a database connection still works
+     * @return the query used to check that a database connection still works
+     */
+    public static String getDatabasePoolValidationQuery() {
+        return database_pool_validation_query;
+    }
+    
+    /**
+     * Returns the number of prepared statements to keep cached on each database connection
+     * @return the number of prepared statements to keep cached on each database connection
+     */
+    public static int getDatabaseStatementCacheSize() {
+        return database_statement_cache_size;
+    }
+    
+    /**
+     * Returns the time in milliseconds between writing buffered !seen times to the database
+     * @return the time in milliseconds between writing buffered !seen times to the database
+     */
+    public static long getSeenFlushInterval() {
+        return seen_flush_interval;
+    }
+    
+    /**
+     * Returns the number of buffered !seen times which causes them to be written immediately
+     * @return the number of buffered !seen times which causes them to be written immediately
+     */
+    public static int getSeenFlushSize() {
+        return seen_flush_size;
+    }
+    
+    /**
+     * Returns the time in milliseconds to wait for an HTTP connection to be established
+     * @return the time in milliseconds to wait for an HTTP connection to be established
+     */
+    public static int getHttpConnectTimeout() {
+        return http_connect_timeout;
+    }
+    
+    /**
+     * Returns the time in milliseconds to wait for data from an HTTP server
+     * @return the time in milliseconds to wait for data from an HTTP server
+     */
+    public static int getHttpReadTimeout() {
+        return http_read_timeout;
+    }
+    
+    /**
+     * Returns the number of idle HTTP connections kept open to each host
+     * @return the number of idle HTTP connections kept open to each host
+     */
+    public static int getHttpMaxConnections() {
+        return http_max_connections;
+    }
+    
+    /**
+     * Returns the number of threads which run non-blocking HTTP requests
+     * @return the number of threads which run non-blocking HTTP requests
+     */
+    public static int getHttpSelectorThreads() {
+        return http_selector_threads;
+    }
+    
+    /**
+     * Returns the number of threads which look up host names and run TLS handshake work for non-blocking HTTP requests
+     * @return the number of threads which look up host names and run TLS handshake work for non-blocking HTTP requests
+     */
+    public static int getHttpResolverThreads() {
+        return http_resolver_threads;
+    }
+    
+    /**
+     * Returns the number of host names to remember the addresses of
+     * @return the number of host names to remember the addresses of
+     */
+    public static int getDNSCacheSize() {
+        return dns_cache_size;
+    }
+    
+    /**
+     * Returns the time in milliseconds to remember the address of a host for
+     * @return the time in milliseconds to remember the address of a host for
+     */
+    public static long getDNSCacheTTL() {
+        return dns_cache_ttl;
+    }
+    
+    /**
+     * Returns the time in milliseconds to remember that a host could not be resolved
+     * @return the time in milliseconds to remember that a host could not be resolved
+     */
+    public static long getDNSCacheNegativeTTL() {
+        return dns_cache_negative_ttl;
+    }
+    
+    /**
+     * Returns the number of page titles which may be fetched at once
+     * @return the number of page titles which may be fetched at once
+     */
+    public static int getTitleFetchMaxRequests() {
+        return title_fetch_max_requests;
+    }
+    
+    /**
+     * Returns the time in milliseconds a page title fetch may take before it is abandoned
+     * @return the time in milliseconds a page title fetch may take before it is abandoned
+     */
+    public static long getTitleFetchDeadline() {
+        return title_fetch_deadline;
+    }
+    
+    /**
+     * Returns the number of bytes of a page searched for its title
+     * @return the number of bytes of a page searched for its title
+     */
+    public static int getTitleMaxBytes() {
+        return title_max_bytes;
+    }
+    
+    /**
+     * Returns the number of page titles to remember
+     * @return the number of page titles to remember
+     */
+    public static int getTitleCacheSize() {
+        return title_cache_size;
+    }
+    
+    /**
+     * Returns the time in milliseconds to remember a page title for
+     * @return the time in milliseconds to remember a page title for
+     */
+    public static long getTitleCacheTTL() {
+        return title_cache_ttl;
+    }
+    
+    /**
+     * Returns the time in milliseconds to remember that a page could not be fetched
+     * @return the time in milliseconds to remember that a page could not be fetched
+     */
+    public static long getTitleCacheNegativeTTL() {
+        return title_cache_negative_ttl;
+    }
+    
     /**
      * Returns the log file to output the HTML-formatted log to
      * @return the log file to output the HTML-formatted log to
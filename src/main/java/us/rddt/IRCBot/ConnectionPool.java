@@ -0,0 +1,310 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Keeps a pool of open database connections so that handlers don't have to
+ * connect and authenticate to the database every time they run. Connections are
+ * validated before being handed out and closed after sitting idle for too long.
+ * 
+ * @author Ryan Morrison
+ */
+public class ConnectionPool {
+    /*
+     * Class variables.
+     */
+    private static final Object lock = new Object();
+    private static final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+    private static int open = 0;
+    private static int waiting = 0;
+    private static ScheduledExecutorService evictor;
+    // Connections idle for less than this (in milliseconds) are handed out without being validated
+    private static final long VALIDATION_INTERVAL = 5000;
+
+    // Statistics
+    private static final AtomicLong borrowed = new AtomicLong();
+    private static final AtomicLong created = new AtomicLong();
+    private static final AtomicLong evicted = new AtomicLong();
+    private static final AtomicLong invalid = new AtomicLong();
+    private static final AtomicLong timeouts = new AtomicLong();
+    private static final AtomicLong totalWait = new AtomicLong();
+
+    /**
+     * Opens the minimum number of connections and starts evicting idle connections
+     */
+    public static synchronized void start() {
+        if(evictor != null) return;
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ConnectionPool");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1000, Configuration.getDatabasePoolIdleTimeout() / 2);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdle();
+                fillToMinimum();
+            }
+        }, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes every idle connection and stops evicting idle connections
+     */
+    public static synchronized void shutdown() {
+        if(evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        List<PooledConnection> toClose;
+        synchronized(lock) {
+            toClose = new ArrayList<PooledConnection>(idle);
+            open -= idle.size();
+            idle.clear();
+        }
+        for(PooledConnection pooled : toClose) {
+            pooled.close();
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none are idle and
+     * the pool is not full
+     * @return a validated connection to the database
+     * @throws SQLException if a connection could not be opened or none became available in time
+     */
+    public static PooledConnection borrow() throws SQLException {
+        long start = System.currentTimeMillis();
+        long deadline = start + Configuration.getDatabasePoolTimeout();
+        while(true) {
+            PooledConnection pooled = null;
+            synchronized(lock) {
+                while(idle.isEmpty() && open >= Configuration.getDatabasePoolMaxSize()) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if(remaining <= 0) {
+                        timeouts.incrementAndGet();
+                        throw new SQLException("Timed out waiting for a database connection");
+                    }
+                    waiting++;
+                    try {
+                        lock.wait(remaining);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection");
+                    } finally {
+                        waiting--;
+                    }
+                }
+                if(!idle.isEmpty()) pooled = idle.removeFirst();
+                else open++;
+            }
+            if(pooled != null) {
+                // Make sure the server hasn't closed the connection while it sat idle
+                if(System.currentTimeMillis() - pooled.getIdleSince() >= VALIDATION_INTERVAL && !isValid(pooled.getConnection())) {
+                    invalid.incrementAndGet();
+                    discard(pooled);
+                    continue;
+                }
+            } else {
+                try {
+                    pooled = openConnection();
+                } catch (SQLException ex) {
+                    discard(null);
+                    throw ex;
+                }
+            }
+            borrowed.incrementAndGet();
+            totalWait.addAndGet(System.currentTimeMillis() - start);
+            return pooled;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool
+     * @param pooled the connection to return
+     */
+    public static void giveBack(PooledConnection pooled) {
+        Connection connection = pooled.getConnection();
+        try {
+            if(connection.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            if(!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            discard(pooled);
+            return;
+        }
+        pooled.markIdle();
+        synchronized(lock) {
+            // Most recently used connections are handed out first so that extras go idle and get evicted
+            idle.addFirst(pooled);
+            lock.notify();
+        }
+    }
+
+    /**
+     * Closes a connection which can no longer be used and frees its place in the pool
+     * @param pooled the connection to close, or null if it was never opened
+     */
+    private static void discard(PooledConnection pooled) {
+        if(pooled != null) pooled.close();
+        synchronized(lock) {
+            open--;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Closes connections which have been idle for longer than allowed, keeping the minimum number open
+     */
+    private static void evictIdle() {
+        List<PooledConnection> toClose = new ArrayList<PooledConnection>();
+        long cutoff = System.currentTimeMillis() - Configuration.getDatabasePoolIdleTimeout();
+        synchronized(lock) {
+            // The least recently used connections are at the end of the list
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while(it.hasNext() && open > Configuration.getDatabasePoolMinSize()) {
+                PooledConnection pooled = it.next();
+                if(pooled.getIdleSince() > cutoff) break;
+                it.remove();
+                open--;
+                toClose.add(pooled);
+            }
+        }
+        for(PooledConnection pooled : toClose) {
+            evicted.incrementAndGet();
+            pooled.close();
+        }
+    }
+
+    /**
+     * Opens connections until the pool holds at least the minimum number
+     */
+    private static void fillToMinimum() {
+        while(true) {
+            synchronized(lock) {
+                if(open >= Configuration.getDatabasePoolMinSize()) return;
+                open++;
+            }
+            try {
+                giveBack(openConnection());
+            } catch (SQLException ex) {
+                discard(null);
+                Configuration.getLogger().write(Level.WARNING, "Unable to open database connection: " + ex.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Opens a new connection to the database as specified in IRCBot.properties
+     * @return the new connection
+     * @throws SQLException if the connection could not be opened
+     */
+    private static PooledConnection openConnection() throws SQLException {
+        try {
+            Connection connection;
+            if(Configuration.getDatabaseDriver().equalsIgnoreCase("mysql")) {
+                Class.forName("com.mysql.jdbc.Driver");
+                connection = DriverManager.getConnection("jdbc:mysql://" + Configuration.getMySQLServer() + "/" + Configuration.getMySQLDatabase() + "?user=" + Configuration.getMySQLUser() + "&password=" + Configuration.getMySQLPassword());
+            } else if(Configuration.getDatabaseDriver().equalsIgnoreCase("sqlite")) {
+                Class.forName("org.sqlite.JDBC");
+                connection = DriverManager.getConnection("jdbc:sqlite:" + Configuration.getSQLiteDatabase() + ".db");
+            } else {
+                throw new SQLException("Invalid SQL configuration in properties file");
+            }
+            created.incrementAndGet();
+            return new PooledConnection(connection, Configuration.getDatabaseStatementCacheSize());
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException("Unable to load the JDBC driver: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Checks that a connection still works by running the validation query
+     * @param connection the connection to check
+     * @return true if the connection works, false if it does not
+     */
+    private static boolean isValid(Connection connection) {
+        Statement statement = null;
+        try {
+            statement = connection.createStatement();
+            statement.execute(Configuration.getDatabasePoolValidationQuery());
+            return true;
+        } catch (SQLException ex) {
+            return false;
+        } finally {
+            if(statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException ex) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of the pool
+     * @return the statistics of the pool
+     */
+    public static String getStatistics() {
+        int openCount, idleCount, waitingCount;
+        synchronized(lock) {
+            openCount = open;
+            idleCount = idle.size();
+            waitingCount = waiting;
+        }
+        long count = borrowed.get();
+        return "Database pool: " + openCount + " open, " + (openCount - idleCount) + " in use, " + waitingCount + " waiting, " +
+                count + " borrowed, " + created.get() + " opened, " + evicted.get() + " evicted, " + invalid.get() + " invalid, " +
+                timeouts.get() + " timed out, " + String.format("avg wait %.1f ms", count == 0 ? 0.0 : totalWait.get() / (double)count) +
+                ", statement cache " + PooledConnection.getCacheHits() + " hits, " + PooledConnection.getCacheMisses() + " misses";
+    }
+}
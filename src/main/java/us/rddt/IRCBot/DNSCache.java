@@ -0,0 +1,131 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves host names for AsyncHTTPClient, remembering the answers for a configurable
+ * time. Hosts which don't resolve are remembered for a shorter time. InetAddress
+ * doesn't tell us the TTL of the records it looked up, so every answer is kept for
+ * the same configured time. The JVM's own lookup cache, which everything else in
+ * the bot uses, is left alone.
+ * 
+ * @author Ryan Morrison
+ */
+public class DNSCache {
+    /*
+     * Class variables.
+     */
+    // Access-ordered so that the least recently used host is dropped when the cache is full
+    private static final Map<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+            return size() > Configuration.getDNSCacheSize();
+        }
+    };
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long failures = 0;
+
+    /**
+     * The remembered answer for a host
+     */
+    private static final class Entry {
+        private final InetAddress address;
+        private final UnknownHostException failure;
+        private final long expiresAt;
+
+        /**
+         * Class constructor
+         * @param address the address the host resolved to, or null if it didn't resolve
+         * @param failure the reason the host didn't resolve, or null if it did
+         * @param ttl the time in milliseconds to remember the answer for
+         */
+        private Entry(InetAddress address, UnknownHostException failure, long ttl) {
+            this.address = address;
+            this.failure = failure;
+            this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+        }
+    }
+
+    /**
+     * Class constructor. Not used, as the cache only has static methods.
+     */
+    private DNSCache() {
+    }
+
+    /**
+     * Resolves a host name, using the remembered answer if it hasn't expired
+     * @param host the host name to resolve
+     * @return the address the host resolved to
+     * @throws UnknownHostException if the host doesn't resolve
+     */
+    public static InetAddress resolve(String host) throws UnknownHostException {
+        String key = host.toLowerCase(Locale.ENGLISH);
+        Entry entry;
+        synchronized(DNSCache.class) {
+            entry = entries.get(key);
+            if(entry != null && System.nanoTime() - entry.expiresAt >= 0) {
+                entries.remove(key);
+                entry = null;
+            }
+            if(entry == null) misses++;
+            else hits++;
+        }
+        if(entry == null) {
+            // Look the host up without holding the lock, so a slow lookup doesn't hold up the others
+            try {
+                entry = new Entry(InetAddress.getByName(host), null, Configuration.getDNSCacheTTL());
+            } catch (UnknownHostException ex) {
+                entry = new Entry(null, ex, Configuration.getDNSCacheNegativeTTL());
+            }
+            synchronized(DNSCache.class) {
+                if(entry.failure != null) failures++;
+                if(Configuration.getDNSCacheSize() > 0) entries.put(key, entry);
+            }
+        }
+        if(entry.failure != null) throw entry.failure;
+        return entry.address;
+    }
+
+    /**
+     * Returns the statistics of the DNS cache
+     * @return the DNS cache's counters in a human-readable format
+     */
+    public static synchronized String getStatistics() {
+        return "DNS cache: " + entries.size() + " hosts, " + hits + " hits, " + misses + " misses, " + failures + " failed lookups";
+    }
+}
@@ -28,16 +28,20 @@
 
 package us.rddt.IRCBot;
 
-import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
 
 /**
- * Helper class to handle database transactions.
+ * Helper class to handle database transactions. Connections are borrowed from the
+ * ConnectionPool on connect and returned to it on disconnect. Statements are
+ * prepared once per pooled connection and reused, and any result sets opened
+ * through this class are closed upon disconnecting.
  * 
  * @author Ryan Morrison
  */
@@ -45,10 +49,9 @@ public class Database {
     /*
      * Class variables.
      */
-    private Connection connection = null;
-    private PreparedStatement preparedStatement = null;
-    private ResultSet resultSet = null;
+    private PooledConnection connection = null;
     private Statement statement = null;
+    private List<ResultSet> openResultSets = new ArrayList<ResultSet>();
 
     /**
      * Class constructor.
@@ -57,63 +60,204 @@ public class Database {
     }
 
     /**
-     * Connects to the database as specified in IRCBot.properties
+     * Borrows a connection to the database as specified in IRCBot.properties, if one isn't held already
      * @throws SQLException if a SQL exception occurs
-     * @throws ClassNotFoundException if the JDBC driver cannot be loaded
-     * @throws IOException if the properties file cannot be loaded
      */
-    public void connect() throws SQLException, ClassNotFoundException, IOException {
-        if(Configuration.getDatabaseDriver().equalsIgnoreCase("mysql")) {
-            Class.forName("com.mysql.jdbc.Driver");
-            connection = DriverManager.getConnection("jdbc:mysql://" + Configuration.getMySQLServer() + "/" + Configuration.getMySQLDatabase() + "?user=" + Configuration.getMySQLUser() + "&password=" + Configuration.getMySQLPassword());
-        } else if(Configuration.getDatabaseDriver().equalsIgnoreCase("sqlite")) {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:" + Configuration.getSQLiteDatabase() + ".db");
-        } else {
-            throw new SQLException("Invalid SQL configuration in properties file");
+    public void connect() throws SQLException {
+        if(connection != null) return;
+        connection = ConnectionPool.borrow();
+    }
+
+    /**
+     * Closes any result sets left open and returns the connection to the pool
+     */
+    public void disconnect() {
+        if(connection == null) return;
+        try {
+            for(ResultSet openResultSet : openResultSets) {
+                openResultSet.close();
+            }
+            if(statement != null) statement.close();
+        } catch (SQLException ex) {
+            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+        } finally {
+            openResultSets.clear();
+            statement = null;
+            ConnectionPool.giveBack(connection);
+            connection = null;
         }
-        statement = connection.createStatement();
     }
 
     /**
-     * Cleans up any potential connections left behind when the database was accessed
+     * Returns a prepared statement for the provided SQL. The statement is cached on the
+     * pooled connection and must not be closed by the caller.
+     * @param sql the SQL to prepare
+     * @return the prepared statement
      * @throws SQLException if a SQL exception occurs
      */
-    public void disconnect() throws SQLException {
-        if(resultSet != null) resultSet.close();
-        if(statement != null) statement.close();
-        if(connection != null) connection.close();
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return connection.prepareStatement(sql);
     }
 
     /**
-     * Gets the database connection
-     * @return the database connection
+     * Runs a query, binding the provided parameters in order. The result set is closed
+     * automatically upon disconnecting.
+     * @param sql the SQL query to run
+     * @param parameters the parameters to bind to the query
+     * @return the results of the query
+     * @throws SQLException if a SQL exception occurs
      */
-    public Connection getConnection() {
-        return connection;
+    public ResultSet executeQuery(String sql, Object... parameters) throws SQLException {
+        ResultSet results = bind(prepareStatement(sql), parameters).executeQuery();
+        openResultSets.add(results);
+        return results;
+    }
+
+    /**
+     * Runs an INSERT, UPDATE or DELETE statement, binding the provided parameters in order
+     * @param sql the SQL statement to run
+     * @param parameters the parameters to bind to the statement
+     * @return the number of rows affected
+     * @throws SQLException if a SQL exception occurs
+     */
+    public int executeUpdate(String sql, Object... parameters) throws SQLException {
+        return bind(prepareStatement(sql), parameters).executeUpdate();
+    }
+
+    /**
+     * Runs an INSERT statement, binding the provided parameters in order
+     * @param sql the SQL statement to run
+     * @param parameters the parameters to bind to the statement
+     * @return the key generated for the inserted row, or -1 if none was generated
+     * @throws SQLException if a SQL exception occurs
+     */
+    public long executeInsert(String sql, Object... parameters) throws SQLException {
+        PreparedStatement prepared = bind(connection.prepareStatement(sql, true), parameters);
+        prepared.executeUpdate();
+        ResultSet keys = prepared.getGeneratedKeys();
+        try {
+            return keys.next() ? keys.getLong(1) : -1;
+        } finally {
+            keys.close();
+        }
+    }
+
+    /**
+     * Runs a statement once for each row of parameters in a single batch
+     * @param sql the SQL statement to run
+     * @param rows the parameters to bind for each run of the statement
+     * @return the number of rows affected by each run of the statement
+     * @throws SQLException if a SQL exception occurs
+     */
+    public int[] executeBatch(String sql, List<Object[]> rows) throws SQLException {
+        PreparedStatement prepared = prepareStatement(sql);
+        prepared.clearBatch();
+        for(Object[] parameters : rows) {
+            bind(prepared, parameters).addBatch();
+        }
+        return prepared.executeBatch();
+    }
+
+    /**
+     * Inserts a row, or updates the existing row if one with the same unique key exists
+     * @param table the table to write to
+     * @param keyColumns the columns making up the table's unique key
+     * @param valueColumns the columns to update when the row already exists
+     * @param values the values of the key columns followed by the value columns
+     * @return the number of rows affected, as reported by the driver
+     * @throws SQLException if a SQL exception occurs
+     */
+    public int executeUpsert(String table, String[] keyColumns, String[] valueColumns, Object... values) throws SQLException {
+        return executeUpdate(getUpsertSQL(table, keyColumns, valueColumns), values);
+    }
+
+    /**
+     * Inserts or updates a row for each row of values in a single batch
+     * @param table the table to write to
+     * @param keyColumns the columns making up the table's unique key
+     * @param valueColumns the columns to update when the row already exists
+     * @param rows the values of the key columns followed by the value columns, for each row
+     * @return the number of rows affected by each write, as reported by the driver
+     * @throws SQLException if a SQL exception occurs
+     */
+    public int[] executeUpsertBatch(String table, String[] keyColumns, String[] valueColumns, List<Object[]> rows) throws SQLException {
+        return executeBatch(getUpsertSQL(table, keyColumns, valueColumns), rows);
+    }
+
+    /**
+     * Builds a single-statement upsert in the configured database's dialect
+     * @param table the table to write to
+     * @param keyColumns the columns making up the table's unique key
+     * @param valueColumns the columns to update when the row already exists
+     * @return the upsert statement
+     * @throws SQLException if the configured database doesn't support upserts
+     */
+    private static String getUpsertSQL(String table, String[] keyColumns, String[] valueColumns) throws SQLException {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        for(String column : keyColumns) {
+            columns.append(column).append(", ");
+            placeholders.append("?, ");
+        }
+        for(String column : valueColumns) {
+            columns.append(column).append(", ");
+            placeholders.append("?, ");
+        }
+        columns.setLength(columns.length() - 2);
+        placeholders.setLength(placeholders.length() - 2);
+        StringBuilder sql = new StringBuilder("INSERT INTO " + table + "(" + columns + ") VALUES (" + placeholders + ")");
+        if(Configuration.getDatabaseDriver().equalsIgnoreCase("mysql")) {
+            sql.append(" ON DUPLICATE KEY UPDATE ");
+            for(int i = 0; i < valueColumns.length; i++) {
+                if(i > 0) sql.append(", ");
+                sql.append(valueColumns[i] + " = VALUES(" + valueColumns[i] + ")");
+            }
+        } else if(Configuration.getDatabaseDriver().equalsIgnoreCase("sqlite")) {
+            sql.append(" ON CONFLICT(");
+            for(int i = 0; i < keyColumns.length; i++) {
+                if(i > 0) sql.append(", ");
+                sql.append(keyColumns[i]);
+            }
+            sql.append(") DO UPDATE SET ");
+            for(int i = 0; i < valueColumns.length; i++) {
+                if(i > 0) sql.append(", ");
+                sql.append(valueColumns[i] + " = excluded." + valueColumns[i]);
+            }
+        } else {
+            throw new SQLException("Invalid SQL configuration in properties file");
+        }
+        return sql.toString();
     }
 
     /**
-     * Gets the prepared statement for use with the database
-     * @return the prepared statement for use with the database
+     * Binds parameters to a prepared statement in order
+     * @param prepared the statement to bind the parameters to
+     * @param parameters the parameters to bind to the statement
+     * @return the prepared statement
+     * @throws SQLException if a SQL exception occurs
      */
-    public PreparedStatement getPreparedStatement() {
-        return preparedStatement;
+    private static PreparedStatement bind(PreparedStatement prepared, Object... parameters) throws SQLException {
+        for(int i = 0; i < parameters.length; i++) {
+            prepared.setObject(i + 1, parameters[i]);
+        }
+        return prepared;
     }
 
     /**
-     * Gets the result set for a query, or null if the query has not executed
-     * @return the result set for a processed query
+     * Gets the database connection
+     * @return the database connection
      */
-    public ResultSet getResultSet() {
-        return resultSet;
+    public Connection getConnection() {
+        return connection.getConnection();
     }
 
     /**
-     * Gets the connection's statement
+     * Gets the connection's statement, creating it if needed
      * @return the connection's statement
+     * @throws SQLException if a SQL exception occurs
      */
-    public Statement getStatement() {
+    public Statement getStatement() throws SQLException {
+        if(statement == null) statement = getConnection().createStatement();
         return statement;
     }
 }
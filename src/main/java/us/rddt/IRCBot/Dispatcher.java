@@ -0,0 +1,314 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Enums.Upstreams;
+
+/**
+ * Central executor for the bot's handlers. Rather than spawning a new thread for
+ * every command, shout or URL the bot sees, handlers are queued onto a bounded pool
+ * of worker threads. Should the queue fill up (during a netsplit or a flood of URLs,
+ * for example) further handlers are dropped and logged instead of exhausting the
+ * threads available to the JVM. Queue depth and latency are tracked per handler.
+ * 
+ * When dispatch_mode is set to virtual, handlers are instead run on virtual threads
+ * (where the JVM supports them) so that handlers blocked on sockets don't each hold
+ * a platform thread. As nothing bounds the number of virtual threads, handlers which
+ * talk to an outside service must first acquire a permit for that service.
+ * 
+ * @author Ryan Morrison
+ */
+public class Dispatcher {
+    /*
+     * Class variables.
+     */
+    private static ExecutorService executor;
+    private static boolean isVirtual;
+    private static Semaphore outstanding;
+    private static final Map<Upstreams,Semaphore> upstreamLimits = new EnumMap<Upstreams,Semaphore>(Upstreams.class);
+    private static final ConcurrentMap<String,HandlerStatistics> statistics = new ConcurrentHashMap<String,HandlerStatistics>();
+
+    /**
+     * Counters kept for each type of handler submitted to the dispatcher
+     */
+    private static final class HandlerStatistics {
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalWait = new AtomicLong();
+        private final AtomicLong totalRun = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+
+        /**
+         * Records a handler which has finished executing
+         * @param wait the time in nanoseconds the handler spent queued
+         * @param run the time in nanoseconds the handler spent running
+         */
+        private void recordCompleted(long wait, long run) {
+            completed.incrementAndGet();
+            totalWait.addAndGet(wait);
+            totalRun.addAndGet(run);
+            long latency = wait + run;
+            long currentMax;
+            while(latency > (currentMax = maxLatency.get())) {
+                if(maxLatency.compareAndSet(currentMax, latency)) break;
+            }
+        }
+
+        /**
+         * Returns the counters in a human-readable format
+         * @return the counters in a human-readable format
+         */
+        public String toString() {
+            long count = completed.get();
+            return queued.get() + " queued, " + count + " completed, " + rejected.get() + " dropped, " +
+                    String.format("avg wait %.1f ms, avg run %.1f ms, max %.1f ms",
+                            count == 0 ? 0.0 : totalWait.get() / count / 1000000.0,
+                            count == 0 ? 0.0 : totalRun.get() / count / 1000000.0,
+                            maxLatency.get() / 1000000.0);
+        }
+    }
+
+    /**
+     * Wraps a handler to record its statistics as it passes through the dispatcher
+     */
+    private static final class DispatchedTask implements Runnable {
+        private final String name;
+        private final Runnable task;
+        private final HandlerStatistics stats;
+        private final Semaphore upstreamLimit;
+        private final long queuedAt = System.nanoTime();
+
+        /**
+         * Class constructor
+         * @param name the name of the handler
+         * @param task the handler to execute
+         * @param stats the statistics to record against
+         * @param upstreamLimit the permits to acquire before running, or null if unlimited
+         */
+        private DispatchedTask(String name, Runnable task, HandlerStatistics stats, Semaphore upstreamLimit) {
+            this.name = name;
+            this.task = task;
+            this.stats = stats;
+            this.upstreamLimit = upstreamLimit;
+        }
+
+        /**
+         * Method that executes upon thread start
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            try {
+                // Wait for the upstream service to have capacity for us
+                if(upstreamLimit != null) upstreamLimit.acquireUninterruptibly();
+                long startedAt = System.nanoTime();
+                stats.queued.decrementAndGet();
+                try {
+                    task.run();
+                } catch (Throwable ex) {
+                    Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                } finally {
+                    if(upstreamLimit != null) upstreamLimit.release();
+                    stats.recordCompleted(startedAt - queuedAt, System.nanoTime() - startedAt);
+                }
+            } finally {
+                if(isVirtual) outstanding.release();
+            }
+        }
+    }
+
+    /**
+     * Drops handlers that cannot be queued, logging that they have been dropped
+     */
+    private static final class DropPolicy implements RejectedExecutionHandler {
+        /**
+         * Called by the executor when a handler cannot be queued
+         * (non-Javadoc)
+         * @see java.util.concurrent.RejectedExecutionHandler#rejectedExecution(java.lang.Runnable, java.util.concurrent.ThreadPoolExecutor)
+         */
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            drop((DispatchedTask)r);
+        }
+    }
+
+    /**
+     * Drops a handler that cannot be queued and logs that it has been dropped
+     * @param task the handler to drop
+     */
+    private static void drop(DispatchedTask task) {
+        task.stats.queued.decrementAndGet();
+        task.stats.rejected.incrementAndGet();
+        Configuration.getLogger().write(Level.WARNING, "Dispatch queue is full, dropping " + task.name + " handler");
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each handler
+     * @return the executor, or null if the JVM does not support virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        // Looked up reflectively so the bot still builds and runs on JVMs without virtual threads
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts the dispatcher using the mode and sizes provided in the configuration
+     */
+    public static synchronized void start() {
+        if(executor != null) return;
+        if(Configuration.getDispatchMode().equalsIgnoreCase("virtual")) {
+            executor = newVirtualThreadExecutor();
+            if(executor != null) {
+                isVirtual = true;
+                // The queue size bounds how many handlers may be outstanding at once
+                outstanding = new Semaphore(Configuration.getDispatchQueueSize());
+                for(Upstreams upstream : Upstreams.values()) {
+                    upstreamLimits.put(upstream, new Semaphore(Configuration.getDispatchUpstreamLimit(), true));
+                }
+                Configuration.getLogger().write(Level.INFO, "Started dispatcher using virtual threads (" + Configuration.getDispatchUpstreamLimit() + " concurrent requests per upstream service)");
+                return;
+            }
+            Configuration.getLogger().write(Level.WARNING, "Virtual threads are not supported by this JVM, falling back to a worker pool");
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(Configuration.getDispatchPoolSize(), Configuration.getDispatchPoolSize(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Configuration.getDispatchQueueSize()),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "Dispatcher-" + count.incrementAndGet());
+                    }
+                }, new DropPolicy());
+        // Let idle workers exit so a quiet bot doesn't hold on to threads it doesn't need
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+        Configuration.getLogger().write(Level.INFO, "Started dispatcher with " + Configuration.getDispatchPoolSize() + " workers and a queue of " + Configuration.getDispatchQueueSize());
+    }
+
+    /**
+     * Queues a handler for execution, dropping it if the queue is full
+     * @param task the handler to execute
+     */
+    public static void execute(Runnable task) {
+        execute(task, null);
+    }
+
+    /**
+     * Queues a handler which talks to an outside service for execution, dropping it
+     * if the queue is full
+     * @param task the handler to execute
+     * @param upstream the service the handler talks to, or null if it doesn't
+     */
+    public static void execute(Runnable task, Upstreams upstream) {
+        String name = task.getClass().getSimpleName();
+        if(name.isEmpty()) name = task.getClass().getName();
+        HandlerStatistics stats = statistics.get(name);
+        if(stats == null) {
+            HandlerStatistics created = new HandlerStatistics();
+            stats = statistics.putIfAbsent(name, created);
+            if(stats == null) stats = created;
+        }
+        stats.queued.incrementAndGet();
+        // Upstream limits only apply to virtual threads, a worker pool is already bounded by its size
+        DispatchedTask dispatched = new DispatchedTask(name, task, stats, (isVirtual && upstream != null) ? upstreamLimits.get(upstream) : null);
+        if(isVirtual) {
+            if(!outstanding.tryAcquire()) {
+                drop(dispatched);
+                return;
+            }
+            try {
+                executor.execute(dispatched);
+            } catch (RejectedExecutionException ex) {
+                outstanding.release();
+                drop(dispatched);
+            }
+        } else {
+            executor.execute(dispatched);
+        }
+    }
+
+    /**
+     * Stops accepting new handlers and waits briefly for queued handlers to finish
+     */
+    public static synchronized void shutdown() {
+        if(executor == null) return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the statistics for each handler that has been dispatched
+     * @return the statistics for each handler, one handler per line
+     */
+    public static String[] getStatistics() {
+        Map<String,HandlerStatistics> sorted = new TreeMap<String,HandlerStatistics>(statistics);
+        String[] lines = new String[sorted.size() + 1];
+        int i = 0;
+        if(isVirtual) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Dispatcher (virtual threads): " + (Configuration.getDispatchQueueSize() - outstanding.availablePermits()) + " handlers outstanding, upstream permits free:");
+            for(Map.Entry<Upstreams,Semaphore> entry : upstreamLimits.entrySet()) {
+                builder.append(" " + entry.getKey().name().toLowerCase() + "=" + entry.getValue().availablePermits());
+            }
+            lines[i++] = builder.toString();
+        } else {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor)executor;
+            lines[i++] = "Dispatcher: " + pool.getActiveCount() + "/" + pool.getMaximumPoolSize() + " workers busy, " + pool.getQueue().size() + " handlers queued";
+        }
+        for(Map.Entry<String,HandlerStatistics> entry : sorted.entrySet()) {
+            lines[i++] = entry.getKey() + ": " + entry.getValue();
+        }
+        return lines;
+    }
+}
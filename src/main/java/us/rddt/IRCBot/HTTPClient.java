@@ -0,0 +1,197 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The one place the bot makes HTTP requests from. Every request gets the configured
+ * user agent and timeouts and asks for gzip compression, and every response is read
+ * to the end and closed so that the JVM can put the connection back into its
+ * per-host keep-alive cache instead of opening (and for HTTPS, handshaking) a new
+ * one for the next request to the same host.
+ * 
+ * @author Ryan Morrison
+ */
+public class HTTPClient {
+    /*
+     * Class variables.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Class constructor. Not used, as the client only has static methods.
+     */
+    private HTTPClient() {
+    }
+
+    /**
+     * Configures the JVM's keep-alive cache. Must be called before the first request is made,
+     * as the JVM only reads these settings once.
+     */
+    public static void start() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(Configuration.getHttpMaxConnections()));
+    }
+
+    /**
+     * Opens a connection to a URL with the bot's user agent, timeouts and compression
+     * @param url the URL to connect to
+     * @return the connection, which hasn't been sent yet
+     * @throws IOException if the connection cannot be opened
+     */
+    public static HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+        conn.setConnectTimeout(Configuration.getHttpConnectTimeout());
+        conn.setReadTimeout(Configuration.getHttpReadTimeout());
+        // Set a proper user agent, some sites return HTTP 409 without it
+        conn.setRequestProperty("User-Agent", Configuration.getUserAgent());
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        return conn;
+    }
+
+    /**
+     * Throws an exception if the server returned an error. The error page is read and
+     * discarded first, so that the connection can still be reused.
+     * @param conn the connection to check
+     * @throws IOException if the server returned a response code of 400 or above
+     */
+    public static void checkResponse(HttpURLConnection conn) throws IOException {
+        int code = conn.getResponseCode();
+        if(code < 400) return;
+        InputStream error = conn.getErrorStream();
+        if(error != null) {
+            try {
+                byte[] discard = new byte[1024];
+                while(error.read(discard) != -1);
+            } finally {
+                error.close();
+            }
+        }
+        throw new IOException("Server returned response code: " + code);
+    }
+
+    /**
+     * Returns the body of a response, decompressing it if the server compressed it
+     * @param conn the connection to read from
+     * @return the body of the response
+     * @throws IOException if the body cannot be read
+     */
+    public static InputStream getInputStream(HttpURLConnection conn) throws IOException {
+        InputStream in = conn.getInputStream();
+        String encoding = conn.getContentEncoding();
+        if(encoding != null && encoding.equalsIgnoreCase("gzip")) return new GZIPInputStream(in);
+        return in;
+    }
+
+    /**
+     * Reads the whole body of a response and closes it
+     * @param conn the connection to read from
+     * @return the body of the response
+     * @throws IOException if the body cannot be read
+     */
+    public static byte[] readBytes(HttpURLConnection conn) throws IOException {
+        InputStream in = getInputStream(conn);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            // Closing the stream at the end of the body hands the connection back to the keep-alive cache
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the whole body of a response as text and closes it
+     * @param conn the connection to read from
+     * @return the body of the response, decoded with the character set the server gave or UTF-8
+     * @throws IOException if the body cannot be read
+     */
+    public static String readString(HttpURLConnection conn) throws IOException {
+        byte[] body = readBytes(conn);
+        return new String(body, getCharset(conn.getContentType()));
+    }
+
+    /**
+     * Downloads a URL
+     * @param url the URL to download
+     * @return the body of the response
+     * @throws IOException if the download fails or the server returned an error
+     */
+    public static byte[] getBytes(URL url) throws IOException {
+        HttpURLConnection conn = open(url);
+        checkResponse(conn);
+        return readBytes(conn);
+    }
+
+    /**
+     * Downloads a URL as text
+     * @param url the URL to download
+     * @return the body of the response
+     * @throws IOException if the download fails or the server returned an error
+     */
+    public static String getString(URL url) throws IOException {
+        HttpURLConnection conn = open(url);
+        checkResponse(conn);
+        return readString(conn);
+    }
+
+    /**
+     * Returns the character set named in a Content-Type header
+     * @param contentType the Content-Type header, which may be null
+     * @return the character set, or UTF-8 if none was given or it isn't supported
+     */
+    public static Charset getCharset(String contentType) {
+        if(contentType == null) return UTF8;
+        int index = contentType.toLowerCase(Locale.ENGLISH).indexOf("charset=");
+        if(index == -1) return UTF8;
+        String name = contentType.substring(index + 8).trim();
+        int end = name.indexOf(';');
+        if(end != -1) name = name.substring(0, end).trim();
+        if(name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) name = name.substring(1, name.length() - 1);
+        try {
+            if(Charset.isSupported(name)) return Charset.forName(name);
+        } catch (IllegalArgumentException ex) {
+            // An illegal character set name, fall through to the default
+        }
+        return UTF8;
+    }
+}
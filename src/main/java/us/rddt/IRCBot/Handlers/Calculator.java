@@ -37,6 +37,8 @@ import java.util.StringTokenizer;
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.events.MessageEvent;
 
+import us.rddt.IRCBot.MessageQueue;
+
 /**
  * A simple calculator implementation using Djikstra's Shunting-Yard algorithm.
  * Expressions are provided in infix notation, which is then converted to
@@ -234,6 +236,6 @@ public class Calculator implements Runnable {
         // Then determine the result
         double result = rpnToDouble(rpn);
         // Return the result to the user
-        event.respond(String.valueOf(result));
+        MessageQueue.respond(event, String.valueOf(result));
     }
 }
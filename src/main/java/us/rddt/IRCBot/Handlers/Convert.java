@@ -8,6 +8,7 @@ import org.pircbotx.hooks.events.MessageEvent;
 import us.rddt.IRCBot.Configuration;
 import us.rddt.IRCBot.IRCUtils;
 import us.rddt.IRCBot.Implementations.Converter;
+import us.rddt.IRCBot.MessageQueue;
 
 /**
  * Uses a Google API to perform conversions provided by users via a bot command.
@@ -38,9 +39,9 @@ public class Convert implements Runnable {
             // Perform the conversion and return the result to the user, if an error hasn't occurred
             Converter converted = Converter.convert(event.getMessage().substring(9));
             if(converted.getError().isEmpty()) {
-                event.respond(converted.getLhs() + " is " + converted.getRhs());
+                MessageQueue.respond(event, converted.getLhs() + " is " + converted.getRhs());
             } else {
-                event.respond("Your conversion request is invalid.");
+                MessageQueue.respond(event, "Your conversion request is invalid.");
             }
         } catch (Exception ex) {
             Configuration.getLogger().write(Level.SEVERE, IRCUtils.getStackTraceString(ex));
@@ -38,6 +38,7 @@ import org.pircbotx.hooks.events.MessageEvent;
 import us.rddt.IRCBot.Configuration;
 import us.rddt.IRCBot.IRCUtils;
 import us.rddt.IRCBot.Implementations.UrbanLookup;
+import us.rddt.IRCBot.MessageQueue;
 
 /**
  * Uses the Urban Dictionary to define words or phrases passed to the bot via a command.
@@ -102,20 +103,20 @@ public class Define implements Runnable {
             lookupResult = UrbanLookup.getDefinition(toDefine);
         } catch (IOException ex) {
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
-            event.respond("Error while downloading definition: " + IRCUtils.trimString(event.getMessage(), 50));
+            MessageQueue.respond(event, "Error while downloading definition: " + IRCUtils.trimString(event.getMessage(), 50));
             return;
         } catch (JSONException ex) {
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
-            event.respond("Error while parsing definition: " + IRCUtils.trimString(event.getMessage(), 50));
+            MessageQueue.respond(event, "Error while parsing definition: " + IRCUtils.trimString(event.getMessage(), 50));
         }
         
         /*
          * Return the result to the user based upon whether the lookup was successful or not.
          */
         if(lookupResult.hasResult()) {
-            event.respond(lookupResult.getWord() + ": " + lookupResult.getDefinition() + " (Example: " + lookupResult.getExample() + ")");
+            MessageQueue.respond(event, lookupResult.getWord() + ": " + lookupResult.getDefinition() + " (Example: " + lookupResult.getExample() + ")");
         } else {
-            event.respond("The definition for " + toDefine + " does not exist.");
+            MessageQueue.respond(event, "The definition for " + toDefine + " does not exist.");
         }
     }
 }
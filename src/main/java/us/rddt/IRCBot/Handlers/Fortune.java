@@ -33,6 +33,8 @@ import java.util.Random;
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.events.MessageEvent;
 
+import us.rddt.IRCBot.MessageQueue;
+
 /**
  * A simple random number generator class used to predict or choose outcomes.
  * 
@@ -78,7 +80,7 @@ public class Fortune implements Runnable {
      */
     public void run() {
         try {
-            event.respond(parseFortune(event.getMessage().substring(8)));
+            MessageQueue.respond(event, parseFortune(event.getMessage().substring(8)));
         } catch (IndexOutOfBoundsException ex) {
             return;
         }
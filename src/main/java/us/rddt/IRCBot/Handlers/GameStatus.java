@@ -32,7 +32,6 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -43,7 +42,9 @@ import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Configuration;
 import us.rddt.IRCBot.Database;
+import us.rddt.IRCBot.Enums.MessagePriorities;
 import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.MessageQueue;
 
 /**
  * Allows users to set games that they are currently playing, and allows other
@@ -75,29 +76,30 @@ public class GameStatus implements Runnable {
         // Boolean value to determine if results were returned or not
         boolean emptyRows = true;
         
-        // Connect to the database
-        database = new Database();
-        database.connect();
         // Prepare the StringBuilder to hold the list of nicks playing
         StringBuilder builder = new StringBuilder();
 
-        // Prepare and execute the SQL query
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM GameStatus");
-        ResultSet resultSet = statement.executeQuery();
+        // Connect to the database
+        database = new Database();
+        database.connect();
+        try {
+            // Prepare and execute the SQL query
+            ResultSet resultSet = database.executeQuery("SELECT * FROM GameStatus");
 
-        // If a result was returned, tell the channel what the user is playing
-        // Otherwise, they aren't playing anything
-        String prefix = "";
-        while(resultSet.next()) {
-            builder.append(prefix);
-            prefix = ", ";
-            builder.append(resultSet.getString("Nick") + " playing " + resultSet.getString("Game") + " (" + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, false) + ")");
-            emptyRows = false;
+            // If a result was returned, tell the channel what the user is playing
+            // Otherwise, they aren't playing anything
+            String prefix = "";
+            while(resultSet.next()) {
+                builder.append(prefix);
+                prefix = ", ";
+                builder.append(resultSet.getString("Nick") + " playing " + resultSet.getString("Game") + " (" + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, false) + ")");
+                emptyRows = false;
+            }
+        } finally {
+            // Return the connection to the pool
+            database.disconnect();
         }
 
-        // Disconnect from the database
-        database.disconnect();
-
         /*
          * JDBC does not provide a clear method of determining whether a ResultSet actually has any rows.
          * We have to use a boolean to work out whether it actually returned anything.
@@ -105,7 +107,7 @@ public class GameStatus implements Runnable {
         if(emptyRows) builder.append("Nobody is playing any games.");
 
         // Return the result
-        event.getBot().sendMessage(event.getChannel(), builder.toString());
+        MessageQueue.sendMessage(event.getChannel(), builder.toString(), MessagePriorities.COMMAND);
     }
 
     /**
@@ -123,32 +125,32 @@ public class GameStatus implements Runnable {
             // Boolean value to determine if results were returned or not
             boolean emptyRows = true;
 
-            // Connect to the database
-            database = new Database();
-            database.connect();
             // Prepare the StringBuilder to hold the list of nicks playing
             StringBuilder builder = new StringBuilder();
 
-            // Prepare and execute the SQL query
-            PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM GameStatus WHERE Game = ?");
-            statement.setString(1, game);
-            ResultSet resultSet = statement.executeQuery();
-
-            builder.append("Users playing " + game + ": ");
-
-            // If a result was returned, tell the channel what the user is playing
-            // Otherwise, they aren't playing anything
-            String prefix = "";
-            while(resultSet.next()) {
-                builder.append(prefix);
-                prefix = ", ";
-                builder.append(resultSet.getString("Nick") + " (" + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, false) + ")");
-                emptyRows = false;
+            // Connect to the database
+            database = new Database();
+            database.connect();
+            try {
+                // Prepare and execute the SQL query
+                ResultSet resultSet = database.executeQuery("SELECT * FROM GameStatus WHERE Game = ?", game);
+
+                builder.append("Users playing " + game + ": ");
+
+                // If a result was returned, tell the channel what the user is playing
+                // Otherwise, they aren't playing anything
+                String prefix = "";
+                while(resultSet.next()) {
+                    builder.append(prefix);
+                    prefix = ", ";
+                    builder.append(resultSet.getString("Nick") + " (" + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, false) + ")");
+                    emptyRows = false;
+                }
+            } finally {
+                // Return the connection to the pool
+                database.disconnect();
             }
 
-            // Disconnect from the database
-            database.disconnect();
-
             /*
              * JDBC does not provide a clear method of determining whether a ResultSet actually has any rows.
              * We have to use a boolean to work out whether it actually returned anything.
@@ -156,7 +158,7 @@ public class GameStatus implements Runnable {
             if(emptyRows) builder.append("nobody");
 
             // Return the result
-            event.getBot().sendMessage(event.getChannel(), builder.toString());
+            MessageQueue.sendMessage(event.getChannel(), builder.toString(), MessagePriorities.COMMAND);
         } else {
             // The game's full title isn't in the HashMap
             throw new IllegalArgumentException("Game does not exist");
@@ -174,22 +176,22 @@ public class GameStatus implements Runnable {
         // Connect to the database
         database = new Database();
         database.connect();
+        try {
 
-        // Prepare and execute the SQL query
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM GameStatus WHERE Nick = ?");
-        statement.setString(1, nick);
-        ResultSet resultSet = statement.executeQuery();
+            // Prepare and execute the SQL query
+            ResultSet resultSet = database.executeQuery("SELECT * FROM GameStatus WHERE Nick = ?", nick);
 
-        // If a result was returned, tell the channel what the user is playing
-        // Otherwise, they aren't playing anything
-        if(resultSet.next()) {
-            event.getBot().sendMessage(event.getChannel(), nick + " is playing " + resultSet.getString("Game") + " (" + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, false) + ")");
-        } else {
-            event.getBot().sendMessage(event.getChannel(), nick + " is not playing anything!");
+            // If a result was returned, tell the channel what the user is playing
+            // Otherwise, they aren't playing anything
+            if(resultSet.next()) {
+                MessageQueue.sendMessage(event.getChannel(), nick + " is playing " + resultSet.getString("Game") + " (" + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, false) + ")", MessagePriorities.COMMAND);
+            } else {
+                MessageQueue.sendMessage(event.getChannel(), nick + " is not playing anything!", MessagePriorities.COMMAND);
+            }
+        } finally {
+            // Return the connection to the pool
+            database.disconnect();
         }
-
-        // Disconnect from the database
-        database.disconnect();
     }
 
     /**
@@ -233,14 +235,14 @@ public class GameStatus implements Runnable {
         // Connect to the database
         database = new Database();
         database.connect();
+        try {
 
-        // Prepare and execute the query to delete any entry
-        PreparedStatement statement = database.getConnection().prepareStatement("DELETE FROM GameStatus WHERE Nick = ?");
-        statement.setString(1, nick);
-        statement.executeUpdate();
-
-        // Disconnect from the database
-        database.disconnect();
+            // Prepare and execute the query to delete any entry
+            database.executeUpdate("DELETE FROM GameStatus WHERE Nick = ?", nick);
+        } finally {
+            // Return the connection to the pool
+            database.disconnect();
+        }
     }
 
     /**
@@ -263,33 +265,13 @@ public class GameStatus implements Runnable {
 
             // Connect to the database
             database.connect();
-            // Prepare the query to check if an entry already exists and execute it
-            PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM GameStatus WHERE Nick = ?");
-            statement.setString(1, nick);
-            ResultSet resultSet = statement.executeQuery();
-            // If there is already a game, update it instead of creating a brand new entry
-            if(resultSet.next()) {
-                // Close the previous statement if it isn't closed already
-                if(!statement.isClosed()) statement.close();
-                // Prepare and execute the SQL query to update
-                statement = database.getConnection().prepareStatement("UPDATE GameStatus SET Game = ?, Date = ? WHERE Nick = ?");
-                statement.setString(1, game);
-                statement.setTimestamp(2, new java.sql.Timestamp(System.currentTimeMillis()));
-                statement.setString(3, nick);
-                statement.executeUpdate();
-            } else {
-                // Close the previous statement if it isn't closed already
-                if(!statement.isClosed()) statement.close();
-                // Prepare and execute the SQL query to insert
-                statement = database.getConnection().prepareStatement("INSERT INTO GameStatus(Nick, Date, Game) VALUES (?, ?, ?)");
-                statement.setString(1, nick);
-                statement.setTimestamp(2, new java.sql.Timestamp(System.currentTimeMillis()));
-                statement.setString(3, game);
-                statement.executeUpdate();
+            try {
+                // Create the user's entry, or replace their game if they already have one
+                database.executeUpsert("GameStatus", new String[] { "Nick" }, new String[] { "Game", "Date" }, nick, game, new java.sql.Timestamp(System.currentTimeMillis()));
+            } finally {
+                // Return the connection to the pool
+                database.disconnect();
             }
-
-            // Disconnect from the database
-            database.disconnect();
         } else {
             // The game's full title isn't in the HashMap
             throw new IllegalArgumentException("Game does not exist");
@@ -318,26 +300,26 @@ public class GameStatus implements Runnable {
                 try {
                     setUserStatus(event.getUser().getNick(), parameters[2]);
                 } catch(Exception ex) {
-                    event.respond("Unable to set status - " + ex.getMessage());
+                    MessageQueue.respond(event, "Unable to set status - " + ex.getMessage());
                     return;
                 }
-                event.respond("Done!");
+                MessageQueue.respond(event, "Done!");
             } else {
-                event.respond("You must provide a game to play!");
+                MessageQueue.respond(event, "You must provide a game to play!");
             }
         } else if(parameters[1].equalsIgnoreCase("reset")) {
             try {
                 resetUserStatus(event.getUser().getNick());
             } catch(Exception ex) {
-                event.respond("Unable to reset status - " + ex.getMessage());
+                MessageQueue.respond(event, "Unable to reset status - " + ex.getMessage());
                 return;
             }
-            event.respond("Done!");
+            MessageQueue.respond(event, "Done!");
         } else if(parameters[1].equalsIgnoreCase("all")) {
             try {
                 getAllStatus();
             } catch(Exception ex) {
-                event.respond("Unable to get status - " + ex.getMessage());
+                MessageQueue.respond(event, "Unable to get status - " + ex.getMessage());
                 return;
             }
         } else {
@@ -345,7 +327,7 @@ public class GameStatus implements Runnable {
                 if(gamesMap.containsKey(parameters[1])) getGameStatus(parameters[1]);
                 else getUserStatus(parameters[1]);
             } catch (Exception ex) {
-                event.respond("Unable to get status - " + ex.getMessage());
+                MessageQueue.respond(event, "Unable to get status - " + ex.getMessage());
             }
         }
     }
@@ -35,6 +35,7 @@ import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Implementations.GoogleResult;
 import us.rddt.IRCBot.Implementations.GoogleSearch;
+import us.rddt.IRCBot.MessageQueue;
 
 /**
  * Searches Google for a provided query string and returns the result to the channel.
@@ -77,6 +78,6 @@ public class Search implements Runnable {
             resultText.append(gr.getTitle() + ": " + gr.getUrl() + " | ");
         }
         resultText.append("+" + result.get(0) + " more results");
-        event.respond(resultText.toString());
+        MessageQueue.respond(event, resultText.toString());
     }
 }
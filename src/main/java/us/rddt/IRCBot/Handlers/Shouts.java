@@ -28,12 +28,13 @@
 
 package us.rddt.IRCBot.Handlers;
 
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -43,7 +44,12 @@ import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Configuration;
 import us.rddt.IRCBot.Database;
+import us.rddt.IRCBot.Enums.MessagePriorities;
 import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Implementations.QuoteStore;
+import us.rddt.IRCBot.Implementations.QuoteStore.Quote;
+import us.rddt.IRCBot.Implementations.QuoteStore.Shouter;
+import us.rddt.IRCBot.MessageQueue;
 
 /**
  * Shouts is an interesting way to discourage all caps spam in an IRC channel, or
@@ -136,42 +142,39 @@ public class Shouts implements Runnable {
      */
     private void addNewQuote() throws SQLException {
         // Build and run our update against the database
-        PreparedStatement statement = database.getConnection().prepareStatement("INSERT INTO Quotes(Nick, Date, Channel, Quote) VALUES (?, ?, ?, ?)");
-        statement.setString(1, event.getUser().getNick());
-        statement.setTimestamp(2, new java.sql.Timestamp(System.currentTimeMillis()));
-        statement.setString(3, event.getChannel().getName());
-        statement.setString(4, event.getMessage());
-        statement.executeUpdate();
+        Date date = new Date();
+        int ordinal = QuoteStore.allocateOrdinal(event.getChannel().getName());
+        long id = database.executeInsert("INSERT INTO Quotes(Nick, Date, Channel, Quote, QuoteHash, Ordinal) VALUES (?, ?, ?, ?, ?, ?)", event.getUser().getNick(), new java.sql.Timestamp(date.getTime()), event.getChannel().getName(), event.getMessage(), IRCUtils.hashQuote(event.getMessage()), ordinal);
+        // Make the new quote available to be picked at random
+        if(id != -1) QuoteStore.add(event.getChannel().getName(), new Quote((int)id, ordinal, event.getUser().getNick(), date, event.getMessage()));
     }
     
     /**
-     * Deletes a quote from the database
+     * Deletes a quote from the database. The row is only marked as deleted, so that
+     * its number is still counted when the next number is handed out after a restart.
      * @param quote the quote text to delete
      * @throws SQLException if the SQL query does not execute correctly
      */
     private int deleteQuote(String quote) throws SQLException {
-        PreparedStatement statement = database.getConnection().prepareStatement("DELETE FROM Quotes WHERE Quote = ? AND Channel = ?");
-        statement.setString(1, quote);
-        statement.setString(2, event.getChannel().getName());
-        return statement.executeUpdate();
+        // Find the quotes being deleted first so that they can no longer be picked at random
+        List<Integer> ids = new ArrayList<Integer>();
+        ResultSet resultSet = database.executeQuery("SELECT ID FROM Quotes WHERE Channel = ? AND QuoteHash = ? AND Quote = ? AND Deleted = 0", event.getChannel().getName(), IRCUtils.hashQuote(quote), quote);
+        while(resultSet.next()) {
+            ids.add(resultSet.getInt("ID"));
+        }
+        for(int id : ids) {
+            database.executeUpdate("UPDATE Quotes SET Deleted = 1 WHERE ID = ?", id);
+            QuoteStore.remove(event.getChannel().getName(), id);
+        }
+        return ids.size();
     }
 
     /**
      * Check to see if a quote exists
      * @return true if the quote exists, false if it does not
-     * @throws SQLException if the SQL query does not execute correctly
      */
-    private boolean doesQuoteExist() throws SQLException {
-        // Again, prepared statements to sanitize input
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM Quotes WHERE Quote = ? AND Channel = ?");
-        statement.setString(1, event.getMessage());
-        statement.setString(2, event.getChannel().getName());
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
-            return true;
-        } else {
-            return false;
-        }
+    private boolean doesQuoteExist() {
+        return QuoteStore.find(event.getChannel().getName(), event.getMessage()) != null;
     }
 
     /**
@@ -201,20 +204,15 @@ public class Shouts implements Runnable {
 
     /**
      * Return information about a quote provided by the user
-     * @param quote the quote to look up in the database
-     * @return the formatted result of the database lookup
-     * @throws SQLException if the SQL query does not execute correctly
+     * @param quote the quote to look up
+     * @return the formatted result of the lookup
      */
-    private String getQuoteInfo(String quote) throws SQLException {
-        // You should know why by now.
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM Quotes WHERE Quote = ? AND Channel = ?");
-        statement.setString(1, quote);
-        statement.setString(2, event.getChannel().getName());
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
+    private String getQuoteInfo(String quote) {
+        Quote found = QuoteStore.find(event.getChannel().getName(), quote);
+        if(found != null) {
             // Tease the user if it's their own quote
-            if(resultSet.getString("Nick").equals(event.getUser().getNick())) return Colors.BOLD + "YOU" + Colors.NORMAL + " taught me that! (Don't you remember? Put down the bong!) about " + IRCUtils.toReadableTime((Date)resultSet.getTimestamp("Date"), false, true) + " ago.";
-            return resultSet.getString("Nick") + " shouted this about " + IRCUtils.toReadableTime((Date)resultSet.getTimestamp("Date"), false, true) + " ago.";
+            if(found.getNick().equals(event.getUser().getNick())) return Colors.BOLD + "YOU" + Colors.NORMAL + " taught me that! (Don't you remember? Put down the bong!) about " + IRCUtils.toReadableTime(found.getDate(), false, true) + " ago.";
+            return found.getNick() + " shouted this about " + IRCUtils.toReadableTime(found.getDate(), false, true) + " ago.";
         } else {
             return "Quote not found.";
         }
@@ -223,86 +221,57 @@ public class Shouts implements Runnable {
     /**
      * Returns the statistics of the quote database
      * @return the formatted statistics of the quote database
-     * @throws SQLException if the SQL query does not execute correctly
      */
-    private String getQuoteStats() throws SQLException {
-        // First query to pull the total number of quotes
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT COUNT(*) FROM Quotes WHERE Channel = ?");
-        statement.setString(1, event.getChannel().getName());
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
-            int count = resultSet.getInt("COUNT(*)");
-            // and the second to pull the most active shouter.
-            statement = database.getConnection().prepareStatement("SELECT COUNT(Nick), Nick FROM Quotes WHERE Channel = ? GROUP BY Nick ORDER BY COUNT(Nick) DESC LIMIT 1");
-            statement.setString(1, event.getChannel().getName());
-            resultSet = statement.executeQuery();
-            if(resultSet.next()) {
-                // If both of these execute successfully (which they always should) then return the details the user asked for
-                return "I have " + count + " quotes in my database. The most active shouter is " + resultSet.getString("Nick") + " with " + resultSet.getInt("COUNT(Nick)") + ".";
-            }
-        }
-        return null;
+    private String getQuoteStats() {
+        // The counts are kept up to date as quotes are added and deleted, so there's nothing to query
+        List<Shouter> top = QuoteStore.getTopShouters(event.getChannel().getName(), 1);
+        if(top.isEmpty()) return null;
+        return "I have " + QuoteStore.getCount(event.getChannel().getName()) + " quotes in my database. The most active shouter is " + top.get(0).getNick() + " with " + top.get(0).getCount() + ".";
     }
 
     /**
      * Return the quote at a provided line number
      * @param line the line number to return
      * @return the quote at the provided line
-     * @throws SQLException if the SQL query does not execute correctly
      */
-    private String getQuoteLine(int line) throws SQLException {
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM Quotes WHERE Channel = ? LIMIT ?,1");
-        statement.setString(1, event.getChannel().getName());
-        statement.setInt(2, line - 1);
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
-            return "Quote #" + line + " (" + resultSet.getString("Quote") + ") was shouted by " + resultSet.getString("Nick") + " about " + IRCUtils.toReadableTime((Date)resultSet.getTimestamp("Date"), false, true) + " ago.";
+    private String getQuoteLine(int line) {
+        // Quote numbers never change, so deleting a quote leaves a gap rather than renumbering the ones after it
+        Quote quote = QuoteStore.get(event.getChannel().getName(), line);
+        if(quote != null) {
+            return "Quote #" + line + " (" + quote.getQuote() + ") was shouted by " + quote.getNick() + " about " + IRCUtils.toReadableTime(quote.getDate(), false, true) + " ago.";
+        } else if(QuoteStore.isAllocated(event.getChannel().getName(), line)) {
+            return "Quote #" + line + " has been deleted.";
         } else {
             return "Quote #" + line + " not found.";
         }
     }
 
     /**
-     * Returns a randomly selected quote from the database
+     * Returns a randomly selected quote from the quote store
      * @return the randomly selected quote
-     * @throws SQLException if the SQL query does not execute correctly
      */
-    private String getRandomQuote() throws SQLException {
-        // We use prepared statements to sanitize input from the user
-        // Specifying the channel allows different channels to have their own list of quotes available
-        PreparedStatement statement= database.getConnection().prepareStatement("SELECT * FROM Quotes WHERE Channel = ? ORDER BY RAND() LIMIT 1");
-        statement.setString(1, event.getChannel().getName());
-        // Execute our query against the database
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
-            // Save the last quote to prevent an extra DB hit on !who last
-            shoutMap.put(event.getChannel().getName(), new Shout(resultSet.getString("Quote"), resultSet.getString("Nick"), IRCUtils.toReadableTime((Date)resultSet.getTimestamp("Date"), false, true)));
-            // Return the random quote
-            return resultSet.getString("Quote");
-        } else {
-            // The database query returned nothing, so return null
-            return null;
-        }
+    private String getRandomQuote() {
+        Quote quote = QuoteStore.getRandom(event.getChannel().getName());
+        // The channel has no quotes, so return null
+        if(quote == null) return null;
+        // Save the last quote to prevent an extra lookup on !who last
+        shoutMap.put(event.getChannel().getName(), new Shout(quote.getQuote(), quote.getNick(), IRCUtils.toReadableTime(quote.getDate(), false, true)));
+        // Return the random quote
+        return quote.getQuote();
     }
     
     /**
      * Returns the top 10 shouters on the channel
      * @return the formatted top 10 shouters on the channel
-     * @throws SQLException if the SQL query does not execute correctly
      */
-    private String getTop10Shouters() throws SQLException {
+    private String getTop10Shouters() {
         int tempCount = 1;
         // A temporary StringBuilder to construct our top 10 list
         StringBuilder constructedString = new StringBuilder();
         constructedString.append("The top 10 shouters in " + event.getChannel().getName() + ": ");
-        // We use prepared statements to sanitize input from the user
         // Specifying the channel allows different channels to have their own list of quotes available
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT COUNT(Nick), Nick FROM Quotes WHERE Channel = ? GROUP BY Nick ORDER BY COUNT(Nick) DESC LIMIT 10");
-        statement.setString(1, event.getChannel().getName());
-        // Execute our query against the database
-        ResultSet resultSet = statement.executeQuery();
-        while(resultSet.next()) {
-            constructedString.append(tempCount + ": " + resultSet.getString("Nick") + " (" + resultSet.getInt("COUNT(Nick)") + "), ");
+        for(Shouter shouter : QuoteStore.getTopShouters(event.getChannel().getName(), 10)) {
+            constructedString.append(tempCount + ": " + shouter.getNick() + " (" + shouter.getCount() + "), ");
             tempCount++;
         }
         return constructedString.toString().substring(0, constructedString.length() - 2);
@@ -332,52 +301,60 @@ public class Shouts implements Runnable {
      */
     public void run() {
         try {
-            // Connect to the database
             database = new Database();
-            database.connect();
+            // The quotes couldn't be loaded on startup, so try again now
+            if(!QuoteStore.isLoaded()) {
+                database.connect();
+                QuoteStore.load(database);
+            }
             // If we're to return a random shout
             if(eventType.equals(ShoutEvents.RANDOM_SHOUT)) {
-                // Get a random quote from the database (if possible). Send it to the channel.
+                // Get a random quote from memory (if possible). Send it to the channel.
                 // If the quote does not exist in the database, add it!
                 if((randomQuote = getRandomQuote()) != null) {
-                    event.getBot().sendMessage(event.getChannel(), (Colors.removeFormattingAndColors(randomQuote)));
+                    MessageQueue.sendMessage(event.getChannel(), (Colors.removeFormattingAndColors(randomQuote)), MessagePriorities.SHOUT);
+                }
+                if(!doesQuoteExist()) {
+                    database.connect();
+                    addNewQuote();
                 }
-                if(!doesQuoteExist()) addNewQuote();
             } else if(eventType.equals(ShoutEvents.LOOKUP_COMMAND)) {
                 // We're dealing with a !who list command - respond to the user with the information about the quote.
                 String whoCommand = event.getMessage().substring(5).replaceAll("^\\s+", "").replaceAll("\\s+$", "");
                 if(isValidQuoteNumber(whoCommand)) {
-                    event.respond(getQuoteLine(quoteNumber));
+                    MessageQueue.respond(event, getQuoteLine(quoteNumber));
                     return;
                 }
                 try {
-                    event.respond(getQuoteInfo(whoCommand));
+                    MessageQueue.respond(event, getQuoteInfo(whoCommand));
                 } catch (IndexOutOfBoundsException ex) {
                     return;
                 }
             } else if(eventType.equals(ShoutEvents.LIST_COMMAND)) {
                 // We're dealing with a !who list command - respond to the user with the quote database's statistics
-                event.respond(getQuoteStats());
+                MessageQueue.respond(event, getQuoteStats());
             } else if(eventType.equals(ShoutEvents.LAST_COMMAND)) {
                 // We're dealing with a !who last command - respond to the user with the last shout
-                event.respond(getLastShout());
+                MessageQueue.respond(event, getLastShout());
             } else if(eventType.equals(ShoutEvents.TOP10_COMMAND)) {
                 // We're dealing with a !who top10 command - respond to the user with the top 10 users
-                event.respond(getTop10Shouters());
+                MessageQueue.respond(event, getTop10Shouters());
             } else if(eventType.equals(ShoutEvents.DELETE_COMMAND)) {
                 // We're dealing with a !who delete command - delete the provided quote from the database
                 // Operator status has already been confirmed at this point
+                database.connect();
                 if(deleteQuote(event.getMessage().split("!who delete ")[1]) > 0) {
-                    event.respond("Quote has been removed from the database.");
+                    MessageQueue.respond(event, "Quote has been removed from the database.");
                 } else {
-                    event.respond("Could not delete quote - quote not found.");
+                    MessageQueue.respond(event, "Could not delete quote - quote not found.");
                 }
             }
-            // Disconnect from the database
-            database.disconnect();
         } catch (Exception ex) {
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
             return;
+        } finally {
+            // Return the connection to the pool
+            if(database != null) database.disconnect();
         }
     }
 }
@@ -37,6 +37,7 @@ import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Configuration;
 import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.MessageQueue;
 
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
 import com.github.koraktor.steamcondenser.steam.servers.SourceServer;
@@ -90,7 +91,7 @@ public class SourceServerQuery implements Runnable {
         if(isLocked) builtResponse.append(Colors.RED + "[Locked] " + Colors.NORMAL);
         
         // Return the string to the user
-        event.respond(builtResponse.toString());
+        MessageQueue.respond(event, builtResponse.toString());
     }
     
     /**
@@ -106,7 +107,7 @@ public class SourceServerQuery implements Runnable {
             if(address.length > 2) doSourceQuery(address[0], Integer.parseInt(address[1]));
             else doSourceQuery(address[0], 27015);
         } catch (Exception ex) {
-            event.respond("Could not query the server - it may be offline, not a Source engine game or an incorrect IP address or port has been provided");
+            MessageQueue.respond(event, "Could not query the server - it may be offline, not a Source engine game or an incorrect IP address or port has been provided");
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
         }
     }
@@ -36,6 +36,7 @@ import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Configuration;
 import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.MessageQueue;
 
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
 import com.github.koraktor.steamcondenser.steam.community.SteamId;
@@ -74,7 +75,7 @@ public class SteamUserQuery implements Runnable {
         builtResponse.append("User " + userId.getNickname() + ", member since " + memberSince + ". " + userId.getStateMessage());
         
         // Return the string to the user
-        event.respond(builtResponse.toString());
+        MessageQueue.respond(event, builtResponse.toString());
     }
     
     /**
@@ -87,7 +88,7 @@ public class SteamUserQuery implements Runnable {
             // Retrieve the user's name to look up from the received message and query it
             doUserQuery(event.getMessage().split(" ")[1]);
         } catch (Exception ex) {
-            event.respond("Could not load profile: " + ex.getMessage());
+            MessageQueue.respond(event, "Could not load profile: " + ex.getMessage());
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
         }
     }
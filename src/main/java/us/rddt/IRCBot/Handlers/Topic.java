@@ -35,6 +35,7 @@ import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Enums.TopicUpdates;
+import us.rddt.IRCBot.MessageQueue;
 
 /**
  * Allows ops to update topics by appending or removing provided strings. IRC
@@ -63,7 +64,7 @@ public class Topic implements Runnable {
      * @param appendString the string to append to the topic
      */
     private void appendToTopic(Channel channel, String appendString) {
-        if(!appendString.isEmpty()) event.getBot().setTopic(channel, channel.getTopic() + " " + appendString);
+        if(!appendString.isEmpty()) MessageQueue.setTopic(channel, channel.getTopic() + " " + appendString);
     }
     
     /**
@@ -76,7 +77,7 @@ public class Topic implements Runnable {
             String currentTopic = channel.getTopic();
             String newTopic = currentTopic.replaceFirst(Pattern.quote(removeString), "");
             if(!currentTopic.equals(newTopic)) {
-                event.getBot().setTopic(channel, newTopic);
+                MessageQueue.setTopic(channel, newTopic);
             }
         }
     }
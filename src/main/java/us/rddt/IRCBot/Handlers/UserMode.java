@@ -34,6 +34,8 @@ import org.pircbotx.User;
 import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Enums.UserModes;
+import us.rddt.IRCBot.MessageQueue;
+import us.rddt.IRCBot.ModeBatcher;
 
 /**
  * Allows ops to use shorthand commands for rapidly performing actions on a user.
@@ -69,34 +71,34 @@ public class UserMode implements Runnable {
         if(isAllowable(event.getChannel(), event.getUser(), event.getBot().getUser(modeUser))) {
             switch(mode) {
             case OWNER:
-                event.getBot().owner(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "+q", modeUser);
                 break;
             case DEOWNER:
-                event.getBot().deOwner(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "-q", modeUser);
                 break;
             case SUPEROP:
-                event.getBot().superOp(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "+a", modeUser);
                 break;
             case DESUPEROP:
-                event.getBot().deSuperOp(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "-a", modeUser);
                 break;
             case OP:
-                event.getBot().op(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "+o", modeUser);
                 break;
             case DEOP:
-                event.getBot().deOp(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "-o", modeUser);
                 break;
             case HALFOP:
-                event.getBot().halfOp(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "+h", modeUser);
                 break;
             case DEHALFOP:
-                event.getBot().deHalfOp(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "-h", modeUser);
                 break;
             case VOICE:
-                event.getBot().voice(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "+v", modeUser);
                 break;
             case DEVOICE:
-                event.getBot().deVoice(event.getChannel(), event.getBot().getUser(modeUser));
+                ModeBatcher.setMode(event.getChannel(), "-v", modeUser);
                 break;
             default:
                 break;
@@ -150,18 +152,19 @@ public class UserMode implements Runnable {
         if(isAllowable(event.getChannel(), event.getUser(), event.getBot().getUser(kickUser))) {
             // Don't allow users to kick the bot
             if(!kickUser.equals(event.getBot().getNick())) {
+                // If we're also to ban the user, and the op is not a half op, ban the user first
+                // The ban isn't batched, so that it lands before the user can rejoin
+                if(isBan && !event.getUser().getChannelsHalfOpIn().contains(event.getChannel())) {
+                    MessageQueue.setMode(event.getChannel(), "+b " + event.getBot().getUser(kickUser).getHostmask());
+                }
                 // Kick the offending user! (Reason optional)
                 if(kickReason != "") {
-                    event.getBot().kick(event.getChannel(), event.getBot().getUser(kickUser), kickReason + " (" + event.getUser().getNick() + ")");
+                    MessageQueue.kick(event.getChannel(), event.getBot().getUser(kickUser), kickReason + " (" + event.getUser().getNick() + ")");
                 } else {
-                    event.getBot().kick(event.getChannel(), event.getBot().getUser(kickUser), "Requested (" + event.getUser().getNick() + ")");
-                }
-                // If we're also to ban the user, and the op is not a half op, ban the user and log it as well
-                if(isBan && !event.getUser().getChannelsHalfOpIn().contains(event.getChannel())) {
-                    event.getBot().ban(event.getChannel(), event.getBot().getUser(kickUser).getHostmask());
+                    MessageQueue.kick(event.getChannel(), event.getBot().getUser(kickUser), "Requested (" + event.getUser().getNick() + ")");
                 }
             } else {
-                event.getBot().kick(event.getChannel(), event.getUser(), "You are not allowed to kick the bot.");
+                MessageQueue.kick(event.getChannel(), event.getUser(), "You are not allowed to kick the bot.");
             }
         }
     }
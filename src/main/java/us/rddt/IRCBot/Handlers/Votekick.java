@@ -36,7 +36,9 @@ import org.pircbotx.User;
 import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.Enums.MessagePriorities;
 import us.rddt.IRCBot.Implementations.VotekickObject;
+import us.rddt.IRCBot.MessageQueue;
 
 /**
  * Allows any user to start a votekick against another user in the channel. Others
@@ -73,7 +75,7 @@ public class Votekick implements Runnable {
      * @param user the user to kick
      */
     private void kickUser(Channel channel, User user) {
-        event.getBot().kick(channel, user);
+        MessageQueue.kick(channel, user, "");
         synchronized(currVotekicks) {
             currVotekicks.remove(channel);
         }
@@ -119,7 +121,7 @@ public class Votekick implements Runnable {
         synchronized(currVotekicks) {
             currVotekicks.put(channel, new VotekickObject(votekickUser, startingUser, numVotesRequired));
         }
-        event.getBot().sendMessage(channel, startingUser.getNick() + " has voted to kick " + getVotekickObject().getUser().getNick() + "! (" + getVotekickObject().getNumVotes() + "/" + getVotekickObject().getNumVotesRequired() + " needed, " + Configuration.getVotekickDuration() + " seconds remaining)");
+        MessageQueue.sendMessage(channel, startingUser.getNick() + " has voted to kick " + getVotekickObject().getUser().getNick() + "! (" + getVotekickObject().getNumVotes() + "/" + getVotekickObject().getNumVotesRequired() + " needed, " + Configuration.getVotekickDuration() + " seconds remaining)", MessagePriorities.COMMAND);
         /*
          * Start sleeping the thread. When the vote is halfway complete, if it hasn't passed yet, announce the amount
          * of time remaining and how many votes are still needed.
@@ -131,7 +133,7 @@ public class Votekick implements Runnable {
             ex.printStackTrace();
         }
         if(isVoteInProgress(channel)) {
-            event.getBot().sendMessage(channel, "There are " + (int)(Configuration.getVotekickDuration() / 2) + " seconds remaining in the vote to kick " + getVotekickObject().getUser().getNick() + ". (" + getVotekickObject().getNumVotes() + " votes, " + getVotekickObject().getNumVotesRequired() + " needed)");
+            MessageQueue.sendMessage(channel, "There are " + (int)(Configuration.getVotekickDuration() / 2) + " seconds remaining in the vote to kick " + getVotekickObject().getUser().getNick() + ". (" + getVotekickObject().getNumVotes() + " votes, " + getVotekickObject().getNumVotesRequired() + " needed)", MessagePriorities.COMMAND);
         }
         /*
          * Sleep again. When the vote time has passed, if the vote is still in progress, then end the vote
@@ -144,7 +146,7 @@ public class Votekick implements Runnable {
             ex.printStackTrace();
         }
         if(isVoteInProgress(channel)) {
-            event.getBot().sendMessage(channel, "The vote to kick " + getVotekickObject().getUser().getNick() + " has failed! (" + getVotekickObject().getNumVotes() + " votes, " + getVotekickObject().getNumVotesRequired() + " needed)");
+            MessageQueue.sendMessage(channel, "The vote to kick " + getVotekickObject().getUser().getNick() + " has failed! (" + getVotekickObject().getNumVotes() + " votes, " + getVotekickObject().getNumVotesRequired() + " needed)", MessagePriorities.COMMAND);
             finishVote(event.getChannel());
         }
     }
@@ -161,27 +163,27 @@ public class Votekick implements Runnable {
         if(parameters.length > 1) {
             // Make sure the user isn't trying to apply it to themselves or the bot
             if(parameters[1].equals(event.getUser().getNick())) {
-                event.respond("You cannot participate in a votekick against yourself!");
+                MessageQueue.respond(event, "You cannot participate in a votekick against yourself!");
             } else if(parameters[1].equals(event.getBot().getNick())) {
-                event.respond("You cannot votekick the bot!");
+                MessageQueue.respond(event, "You cannot votekick the bot!");
             } else {
                 // If there is already a vote in progress
                 if(isVoteInProgress(event.getChannel())) {
                     // Make sure the user hasn't already voted
                     if(getVotekickObject().getVotedUsers().contains(event.getUser().getHostmask())) {
-                        event.respond("You have already voted - you cannot vote again!");
+                        MessageQueue.respond(event, "You have already voted - you cannot vote again!");
                     } else {
                         // Make sure the user is voting against the votekicked user, otherwise tell them to wait until the vote is over
                         if(parameters[1].equals(getVotekickObject().getUser().getNick())) {
                             addVote(event.getUser());
-                            event.getBot().sendMessage(event.getChannel(), event.getUser().getNick() + " has voted to kick " + getVotekickObject().getUser().getNick() + "! (" + getVotekickObject().getNumVotes() + "/" + getVotekickObject().getNumVotesRequired() + " needed)");
+                            MessageQueue.sendMessage(event.getChannel(), event.getUser().getNick() + " has voted to kick " + getVotekickObject().getUser().getNick() + "! (" + getVotekickObject().getNumVotes() + "/" + getVotekickObject().getNumVotesRequired() + " needed)", MessagePriorities.COMMAND);
                             // If there are enough votes for the votekick to pass, kick the user and reset the votekick
                             if(getVotekickObject().hasNeededVotes()) {
-                                event.getBot().sendMessage(event.getChannel(), "The votekick against " + getVotekickObject().getUser().getNick() + " has succeeded!");
+                                MessageQueue.sendMessage(event.getChannel(), "The votekick against " + getVotekickObject().getUser().getNick() + " has succeeded!", MessagePriorities.COMMAND);
                                 kickUser(event.getChannel(), getVotekickObject().getUser());
                             }
                         } else {
-                            event.respond("You cannot start another votekick when one is currently in progress!");
+                            MessageQueue.respond(event, "You cannot start another votekick when one is currently in progress!");
                         }
                     }
                 } else {
@@ -189,7 +191,7 @@ public class Votekick implements Runnable {
                     if(event.getBot().getUsers(event.getChannel()).contains(event.getBot().getUser(parameters[1]))) {
                         startNewVotekick(event.getChannel(), event.getUser(), event.getBot().getUser(parameters[1]));
                     } else {
-                        event.respond("You cannot start a vote against a user that is not in the channel!");
+                        MessageQueue.respond(event, "You cannot start a vote against a user that is not in the channel!");
                     }
                 }
             }
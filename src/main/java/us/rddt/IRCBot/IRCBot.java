@@ -28,6 +28,8 @@
 
 package us.rddt.IRCBot;
 
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.logging.Level;
 
 import org.pircbotx.PircBotX;
@@ -35,6 +37,9 @@ import org.pircbotx.UtilSSLSocketFactory;
 import org.pircbotx.exception.NickAlreadyInUseException;
 import org.pircbotx.hooks.ListenerAdapter;
 
+import us.rddt.IRCBot.Implementations.QuoteStore;
+import us.rddt.IRCBot.Implementations.SeenBuffer;
+
 /**
  * The entry point for IRCBot. IRCBot is a custom IRC bot written in Java primarily
  * to support the RDDT IRC Network.
@@ -59,6 +64,36 @@ public class IRCBot extends ListenerAdapter<PircBotX> {
             System.exit(-1);
         }
         Configuration.getLogger().write(Level.INFO, "Initializing bot (IRCBot version " + Configuration.getApplicationVersion() + ")");
+        // Start the dispatcher used to run handlers
+        Dispatcher.start();
+        // Start the pool of database connections used by handlers
+        ConnectionPool.start();
+        // Set up keep-alive for outbound HTTP before any requests are made
+        HTTPClient.start();
+        // Start the threads which run non-blocking HTTP requests, used to fetch page titles
+        try {
+            AsyncHTTPClient.start();
+        } catch (IOException ex) {
+            Configuration.getLogger().write(Level.SEVERE, IRCUtils.getStackTraceString(ex));
+        }
+        // Bring the database schema up to date
+        try {
+            MigrationRunner.migrate();
+        } catch (SQLException ex) {
+            Configuration.getLogger().write(Level.SEVERE, IRCUtils.getStackTraceString(ex));
+        }
+        // Load the quotes into memory so shouts don't need the database
+        Database database = new Database();
+        try {
+            database.connect();
+            QuoteStore.load(database);
+        } catch (Exception ex) {
+            Configuration.getLogger().write(Level.SEVERE, IRCUtils.getStackTraceString(ex));
+        } finally {
+            database.disconnect();
+        }
+        // Start writing buffered !seen times to the database
+        SeenBuffer.start();
         
         // Create a new instance of the IRC bot
         bot = new PircBotX();
@@ -70,6 +105,8 @@ public class IRCBot extends ListenerAdapter<PircBotX> {
         bot.setLogin(Configuration.getUser());
         // Automatically split messages longer than IRC's size limit
         bot.setAutoSplitMessage(true);
+        // Start the queue used to send messages without flooding the server
+        MessageQueue.start(bot);
         // Connect to the IRC server
         connect(bot);
         // Create the scheduler for watching subreddits
@@ -77,7 +114,12 @@ public class IRCBot extends ListenerAdapter<PircBotX> {
         // Add a shutdown handler to attempt to properly disconnect from the server upon shutdown
         Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
             public void run() {
+                MessageQueue.awaitEmpty(5000);
                 if(bot.isConnected()) bot.quitServer("Received SIGINT from command line");
+                Dispatcher.shutdown();
+                AsyncHTTPClient.shutdown();
+                SeenBuffer.shutdown();
+                ConnectionPool.shutdown();
             }
         }));
     }
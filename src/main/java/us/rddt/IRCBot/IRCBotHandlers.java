@@ -28,11 +28,9 @@
 
 package us.rddt.IRCBot;
 
-import java.net.URL;
 import java.util.Arrays;
+import java.util.ServiceLoader;
 import java.util.logging.Level;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.pircbotx.Channel;
 import org.pircbotx.PircBotX;
@@ -45,226 +43,69 @@ import org.pircbotx.hooks.events.MessageEvent;
 import org.pircbotx.hooks.events.PartEvent;
 import org.pircbotx.hooks.events.PrivateMessageEvent;
 import org.pircbotx.hooks.events.QuitEvent;
+import org.pircbotx.hooks.events.ServerResponseEvent;
 
-import us.rddt.IRCBot.Enums.TopicUpdates;
-import us.rddt.IRCBot.Enums.UserModes;
-import us.rddt.IRCBot.Handlers.Calculator;
-import us.rddt.IRCBot.Handlers.Convert;
-import us.rddt.IRCBot.Handlers.Define;
-import us.rddt.IRCBot.Handlers.Fortune;
-import us.rddt.IRCBot.Handlers.GameStatus;
-import us.rddt.IRCBot.Handlers.SourceServerQuery;
-import us.rddt.IRCBot.Handlers.Search;
-import us.rddt.IRCBot.Handlers.Seen;
+import us.rddt.IRCBot.Enums.MessagePriorities;
+import us.rddt.IRCBot.Enums.Permissions;
 import us.rddt.IRCBot.Handlers.Shouts;
-import us.rddt.IRCBot.Handlers.SteamUserQuery;
-import us.rddt.IRCBot.Handlers.Topic;
-import us.rddt.IRCBot.Handlers.UserMode;
-import us.rddt.IRCBot.Handlers.Votekick;
+import us.rddt.IRCBot.Implementations.QuoteStore;
+import us.rddt.IRCBot.Implementations.SeenBuffer;
+import us.rddt.IRCBot.Implementations.TitleCache;
+import us.rddt.IRCBot.Implementations.TitleFetcher;
+import us.rddt.IRCBot.Implementations.URLExtractor.ExtractedURL;
+import us.rddt.IRCBot.Implementations.URLExtractor;
 import us.rddt.IRCBot.Implementations.URLGrabber;
 
 /**
  * Handles events as they are registered by the bot. Each command's action is
- * spawned in a new thread to prevent the bot from locking up on commands which
+ * handed to the dispatcher to prevent the bot from locking up on commands which
  * could potentially take some time to complete - for example, actions that rely
- * on outside services such as retrieving the title of a webpage. Threading these
+ * on outside services such as retrieving the title of a webpage. Dispatching these
  * actions also allows the bot to handle simultaneous commands, however the bot is
  * generally rate limited by the ircd to prevent flooding.
  * 
  * @author Ryan Morrison
  */
 public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
+    /*
+     * Class variables.
+     */
+    private final CommandRegistry commands = new CommandRegistry();
+
     /**
-     * Checks incoming messages from users for potential bot commands
-     * @param event the MessageEvent to parse
-     * @return true if a command was parsed, false if no command was recognized
+     * Class constructor
      */
-    private boolean checkForCommands(MessageEvent<PircBotX> event) {
-        /*
-         * Most commands below spawn threads to prevent blocking.
-         */
-        if(event.getMessage().equals("!who last")) {
-            if(!Configuration.getDisabledFunctions().contains("shout")) {
-                new Thread(new Shouts(event, Shouts.ShoutEvents.LAST_COMMAND)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().equals("!who list")) {
-            if(!Configuration.getDisabledFunctions().contains("shout")) {
-                new Thread(new Shouts(event, Shouts.ShoutEvents.LIST_COMMAND)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().equals("!who top10")) {
-            if(!Configuration.getDisabledFunctions().contains("shout")) {
-                new Thread(new Shouts(event, Shouts.ShoutEvents.TOP10_COMMAND)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!who delete ")) {
-            if(!Configuration.getDisabledFunctions().contains("shout")) {
-                if(isUserOperator(event.getUser(), event.getChannel())) {
-                    new Thread(new Shouts(event, Shouts.ShoutEvents.DELETE_COMMAND)).start();
-                }
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!who ")) {
-            if(!Configuration.getDisabledFunctions().contains("shout")) {
-                new Thread(new Shouts(event, Shouts.ShoutEvents.LOOKUP_COMMAND)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!calc ")) {
-            if(!Configuration.getDisabledFunctions().contains("calc")) {
-                new Thread(new Calculator(event)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!convert ")) {
-            if(!Configuration.getDisabledFunctions().contains("convert")) {
-                new Thread(new Convert(event)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!decide ")) {
-            if(!Configuration.getDisabledFunctions().contains("fortune")) {
-                new Thread(new Fortune(event)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!seen ")) {
-            if(!Configuration.getDisabledFunctions().contains("seen")) {
-                new Thread(new Seen(event)).start();
-                return true;
+    public IRCBotHandlers() {
+        // Register the commands of each handler available on the classpath
+        for(CommandHandler handler : ServiceLoader.load(CommandHandler.class)) {
+            handler.registerCommands(commands);
+        }
+        commands.register(new Command("!leave", null, null, Permissions.ADMINISTRATOR, null, false, new Command.Factory() {
+            public Runnable create(final MessageEvent<PircBotX> event) {
+                return new Runnable() {
+                    public void run() {
+                        event.getBot().partChannel(event.getChannel());
+                    }
+                };
             }
-        }
-        if(event.getMessage().startsWith("!ud ")) {
-            if(!Configuration.getDisabledFunctions().contains("urbandictionary")) {
-                new Thread(new Define(event)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!g ")) {
-            if(!Configuration.getDisabledFunctions().contains("google")) {
-                new Thread(new Search(event)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!query ")) {
-            if(!Configuration.getDisabledFunctions().contains("sourcequery")) {
-                new Thread(new SourceServerQuery(event)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!steam ")) {
-            if(!Configuration.getDisabledFunctions().contains("steamquery")) {
-                new Thread(new SteamUserQuery(event)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!status ")) {
-            if(!Configuration.getDisabledFunctions().contains("gamestatus")) {
-                new Thread(new GameStatus(event)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!votekick ")) {
-            if(!Configuration.getDisabledFunctions().contains("votekick")) {
-                new Thread(new Votekick(event)).start();
-            }
-        }
-        if(event.getMessage().startsWith("!appendtopic ")) {
-            if(isUserOperator(event.getUser(), event.getChannel())) {
-                new Thread(new Topic(event, TopicUpdates.ADD_TO_TOPIC)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().startsWith("!removetopic ")) {
-            if(isUserOperator(event.getUser(), event.getChannel())) {
-                new Thread(new Topic(event, TopicUpdates.REMOVE_FROM_TOPIC)).start();
-                return true;
-            }
-        }
-        if(event.getMessage().equals("!leave")) {
-            if(isUserAdmin(event.getUser())) {
-                event.getBot().partChannel(event.getChannel());
-                return true;
-            }
-        }
-
-        /*
-         * User mode change events
-         */
-        if(event.getMessage().startsWith("!kick ") || event.getMessage().substring(0, 3).equals(".k ")) {
-            new Thread(new UserMode(event, UserModes.KICK)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!kickban ") || event.getMessage().substring(0, 4).equals(".kb ")) {
-            new Thread(new UserMode(event, UserModes.BAN)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!owner ")) {
-            new Thread(new UserMode(event, UserModes.OWNER)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!deowner ")) {
-            new Thread(new UserMode(event, UserModes.DEOWNER)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!protect ")) {
-            new Thread(new UserMode(event, UserModes.SUPEROP)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!deprotect ")) {
-            new Thread(new UserMode(event, UserModes.DESUPEROP)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!op ")) {
-            new Thread(new UserMode(event, UserModes.OP)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!deop ")) {
-            new Thread(new UserMode(event, UserModes.DEOP)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!halfop ")) {
-            new Thread(new UserMode(event, UserModes.HALFOP)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!dehalfop ")) {
-            new Thread(new UserMode(event, UserModes.DEHALFOP)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!voice ")) {
-            new Thread(new UserMode(event, UserModes.VOICE)).start();
-            return true;
-        }
-        if(event.getMessage().startsWith("!devoice ")) {
-            new Thread(new UserMode(event, UserModes.DEVOICE)).start();
-            return true;
-        }
-        return false;
+        }));
+        commands.setDisabledFunctions(Configuration.getDisabledFunctions());
     }
 
     /**
-     * Checks to see if a string is uppercase
-     * @param s the string to check
-     * @return true if the string is uppercase, false if it is not
+     * Checks incoming messages from users for potential bot commands
+     * @param event the MessageEvent to parse
+     * @return true if a command was parsed, false if no command was recognized
      */
-    private boolean isUpperCase(String s) {
-        // Boolean value to ensure that an all numeric string does not trigger the shouting functions
-        boolean includesLetter = false;
-        // Loop through each character in the string individually
-        for(int i = 0; i < s.length(); i++) {
-            // If there's at least one letter then the string could qualify as being a 'shout'
-            if(Character.isLetter(s.charAt(i))) includesLetter = true;
-            // Any lower case letters immediately disqualifies the string, return immediately instead of continuing the loop
-            if(Character.isLowerCase(s.charAt(i))) return false;
-        }
-        // If there's at least one letter in the string return true, otherwise disqualify it
-        if(includesLetter) return true;
-        else return false;
+    private boolean checkForCommands(MessageEvent<PircBotX> event) {
+        Command command = commands.lookup(event.getMessage());
+        if(command == null || !commands.isEnabled(command)) return false;
+        // Commands are dispatched to worker threads to prevent blocking
+        if(hasPermission(event.getUser(), event.getChannel(), command.getPermission())) {
+            Runnable handler = command.getFactory().create(event);
+            if(handler != null) Dispatcher.execute(handler, command.getUpstream());
+        }
+        return true;
     }
 
     /**
@@ -286,7 +127,7 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
      */
     public void onJoin(JoinEvent<PircBotX> event) {
         if(!Configuration.getChannelAnnouncement().equals("") && Arrays.asList(Configuration.getChannelsParticipating()).contains(event.getChannel().getName())) {
-            event.getBot().sendMessage(event.getUser(), "ANNOUNCEMENT: " + Configuration.getChannelAnnouncement());
+            MessageQueue.sendMessage(event.getUser(), "ANNOUNCEMENT: " + Configuration.getChannelAnnouncement(), MessagePriorities.ANNOUNCEMENT);
         }
     }
 
@@ -309,22 +150,20 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
      * @throws Exception
      */
     public void onMessage(MessageEvent<PircBotX> event) throws Exception {
-        // If the message is in upper case and not from ourselves, spawn a new thread to handle the shout
-        if(isUpperCase(event.getMessage()) && event.getMessage().replaceAll("^\\s+", "").replaceAll("\\s+$", "").length() > 5 && event.getUser() != event.getBot().getUserBot()) {
-            new Thread(new Shouts(event, Shouts.ShoutEvents.RANDOM_SHOUT)).start();
+        // Look at the message once to decide whether it is a shout or a command
+        int classification = MessageClassifier.classify(event.getMessage());
+        // If the message is in upper case and not from ourselves, dispatch a handler for the shout
+        if(MessageClassifier.isShout(classification) && MessageClassifier.getTrimmedLength(classification) > 5 && event.getUser() != event.getBot().getUserBot()) {
+            Dispatcher.execute(new Shouts(event, Shouts.ShoutEvents.RANDOM_SHOUT));
             return;
         }
-        if(event.getMessage().charAt(0) == '!' || event.getMessage().charAt(0) == '.') {
+        if(MessageClassifier.isCommand(classification)) {
             if(checkForCommands(event)) return;
         }
-        if(!Configuration.getDisabledFunctions().contains("url")) {
-            // Use a regex pattern to match URLs out of user messages
-            int urlCount = 0;
-            Pattern urlPattern = Pattern.compile("\\bhttps?://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]");
-            Matcher urlMatcher = urlPattern.matcher(event.getMessage());
-            while(urlMatcher.find()) {
-                if(++urlCount > 2) break;
-                new Thread(new URLGrabber(event, new URL(urlMatcher.group()))).start();
+        if(commands.isEnabled("url")) {
+            // Look up at most two of the URLs in the message
+            for(ExtractedURL url : URLExtractor.extract(event.getMessage(), 2)) {
+                Dispatcher.execute(new URLGrabber(event, url), URLGrabber.getUpstream(url.getURL()));
             }
         }
     }
@@ -336,8 +175,8 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
      * @param event the PartEvent to parse
      */
     public void onPart(PartEvent<PircBotX> event) {
-        if(!Configuration.getDisabledFunctions().contains("seen")) {
-            new Thread(new Seen(event)).start();
+        if(commands.isEnabled("seen")) {
+            SeenBuffer.record(event.getUser().getNick(), event.getChannel().getName());
         }
     }
 
@@ -367,6 +206,7 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
                 sendGlobalMessage(event.getBot(), "Reloading configuration...");
                 try {
                     Configuration.loadConfiguration();
+                    commands.setDisabledFunctions(Configuration.getDisabledFunctions());
                     Configuration.startScheduler(event.getBot());
                 } catch (Exception ex) {
                     Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
@@ -376,6 +216,20 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
                 sendGlobalMessage(event.getBot(), "Successfully reloaded configuration.");
                 return;
             }
+            if(event.getMessage().equals("stats")) {
+                for(String line : Dispatcher.getStatistics()) {
+                    MessageQueue.sendMessage(event.getUser(), line, MessagePriorities.COMMAND);
+                }
+                for(String line : MessageQueue.getStatistics()) {
+                    MessageQueue.sendMessage(event.getUser(), line, MessagePriorities.COMMAND);
+                }
+                MessageQueue.sendMessage(event.getUser(), ConnectionPool.getStatistics(), MessagePriorities.COMMAND);
+                MessageQueue.sendMessage(event.getUser(), QuoteStore.getStatistics(), MessagePriorities.COMMAND);
+                MessageQueue.sendMessage(event.getUser(), TitleFetcher.getStatistics(), MessagePriorities.COMMAND);
+                MessageQueue.sendMessage(event.getUser(), TitleCache.getStatistics(), MessagePriorities.COMMAND);
+                MessageQueue.sendMessage(event.getUser(), DNSCache.getStatistics(), MessagePriorities.COMMAND);
+                return;
+            }
             if(event.getMessage().equals("restart")) {
                 Configuration.getLogger().write(Level.INFO, "Restarting due to administrator request...");
                 sendGlobalMessage(event.getBot(), "Restarting due to administrator request...");
@@ -387,7 +241,7 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
             }
         } else {
             // There's no reason for anyone to privately message the bot - remind them that they are messaging a bot!
-            event.respond("Hi! I am IRCBot version " + Configuration.getApplicationVersion() + ". If you don't know already, I'm just a bot and can't respond to your questions/comments. :( You might want to talk to my administrator, " + Configuration.getAdminNick() + " instead!");
+            MessageQueue.sendMessage(event.getUser(), "Hi! I am IRCBot version " + Configuration.getApplicationVersion() + ". If you don't know already, I'm just a bot and can't respond to your questions/comments. :( You might want to talk to my administrator, " + Configuration.getAdminNick() + " instead!", MessagePriorities.COMMAND);
         }
     }
 
@@ -398,8 +252,41 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
      * @param event the QuitEvent to parse
      */
     public void onQuit(QuitEvent<PircBotX> event) {
-        if(!Configuration.getDisabledFunctions().contains("seen")) {
-            new Thread(new Seen(event)).start();
+        if(commands.isEnabled("seen")) {
+            for(Channel c : event.getUser().getChannels()) {
+                SeenBuffer.record(event.getUser().getNick(), c.getName());
+            }
+        }
+    }
+
+    /**
+     * Handler when the server sends a numeric response
+     * (non-Javadoc)
+     * @see org.pircbotx.hooks.ListenerAdapter#onServerResponse(org.pircbotx.hooks.events.ServerResponseEvent)
+     * @param event the ServerResponseEvent to parse
+     */
+    public void onServerResponse(ServerResponseEvent<PircBotX> event) {
+        // Keep track of the limits the server supports (RPL_ISUPPORT)
+        if(event.getCode() == 5) {
+            ServerSupport.parse(event.getResponse());
+        }
+    }
+
+    /**
+     * Checks to see if a user has the permission level required for a command
+     * @param user the user to check
+     * @param channel the channel the command was used in
+     * @param permission the permission level required
+     * @return true if the user has the required permission level, false if they do not
+     */
+    private boolean hasPermission(User user, Channel channel, Permissions permission) {
+        switch(permission) {
+        case ADMINISTRATOR:
+            return isUserAdmin(user);
+        case OPERATOR:
+            return isUserOperator(user, channel);
+        default:
+            return true;
         }
     }
 
@@ -430,9 +317,7 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
      * @param message the message to send
      */
     private void sendGlobalMessage(PircBotX bot, String message) {
-        for(Channel c : bot.getChannels()) {
-            bot.sendMessage(c, message);
-        }
+        MessageQueue.sendMessage(bot.getChannels(), message, MessagePriorities.ANNOUNCEMENT);
     }
     
     /**
@@ -449,8 +334,8 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
             for(int i = 2; i < splitLine.length; i++) {
                 builtString.append(splitLine[i] + " ");
             }
-            if(isNotice) bot.sendNotice(channelToSend, builtString.toString());
-            else bot.sendMessage(channelToSend, builtString.toString());
+            if(isNotice) MessageQueue.sendNotice(channelToSend.getName(), builtString.toString(), MessagePriorities.ANNOUNCEMENT);
+            else MessageQueue.sendMessage(channelToSend, builtString.toString(), MessagePriorities.ANNOUNCEMENT);
         }
     }
 }
@@ -31,8 +31,10 @@ package us.rddt.IRCBot;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.ArrayList;
+import java.util.Locale;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -48,6 +50,7 @@ public class IRCUtils {
      * Might not be defined on non Hotspot VM implementations.
      */
     public static final String SUN_JAVA_COMMAND = "sun.java.command";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
     /**
      * Returns a properly escaped string value
@@ -69,6 +72,21 @@ public class IRCUtils {
         return ExceptionUtils.getStackTrace(throwable);
     }
     
+    /**
+     * Hashes a quote for indexed lookups using 64-bit FNV-1a. Quotes are compared
+     * case-insensitively by the database, so the hash ignores case as well.
+     * @param quote the quote to hash
+     * @return the hash of the quote
+     */
+    public static long hashQuote(String quote) {
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : quote.toLowerCase(Locale.ENGLISH).getBytes(UTF8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
     /**
      * Restart the current Java application
      * @throws URISyntaxException 
@@ -1,15 +1,12 @@
 package us.rddt.IRCBot.Implementations;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.HTTPClient;
 
 /**
  * Uses a Google API to perform conversions provided by users via a bot command.
@@ -57,33 +54,17 @@ public class Converter {
         /*
          * Variables
          */
-        StringBuilder jsonToParse = new StringBuilder();
-        String buffer;
         URL link = new URL("http://www.google.com/ig/calculator?hl=en&q=" + lhs.replace(" ", "%20"));
 
         /*
-         * Opens a connection to the Google API, and downloads the data into a temporary variable.
+         * Downloads the data from the Google API into a temporary variable.
          */
-        HttpURLConnection conn = (HttpURLConnection)link.openConnection();
-        conn.setRequestProperty("User-Agent", Configuration.getUserAgent());
-        if(conn.getResponseCode() >= 400) {
-            throw new IOException("Server returned response code: " + conn.getResponseCode());
-        }
-
-        BufferedReader buf = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        while((buffer = buf.readLine()) != null) {
-            jsonToParse.append(buffer);
-        }
-
-        /*
-         * Disconnect from the server.
-         */
-        conn.disconnect();
+        String jsonToParse = HTTPClient.getString(link);
 
         /*
          * Parse the JSON data.
          */
-        JSONObject result = new JSONObject(jsonToParse.toString());
+        JSONObject result = new JSONObject(jsonToParse);
         return new Converter(result.getString("lhs"), result.getString("rhs"), result.getString("error"), result.getBoolean("icc"));
     }
 
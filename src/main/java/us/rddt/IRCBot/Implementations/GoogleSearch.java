@@ -28,10 +28,7 @@
 
 package us.rddt.IRCBot.Implementations;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -40,7 +37,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.HTTPClient;
 
 /**
  * Performs a Google search with a provided query string. The results are returned
@@ -62,8 +59,6 @@ public class GoogleSearch {
         /*
          * Variables.
          */
-        StringBuilder jsonToParse = new StringBuilder();
-        String buffer;
         URL searchUrl = new URL("http://ajax.googleapis.com/ajax/services/search/web?v=1.0&q=" + query.replace(" ", "%20"));
         
         String resultCount = null;
@@ -72,28 +67,14 @@ public class GoogleSearch {
         List<Object> toReturn = new ArrayList<Object>();
 
         /*
-         * Opens a connection to the provided URL, and downloads the data into a temporary variable.
+         * Downloads the data from the provided URL into a temporary variable.
          */
-        HttpURLConnection conn = (HttpURLConnection)searchUrl.openConnection();
-        conn.setRequestProperty("User-Agent", Configuration.getUserAgent());
-        if(conn.getResponseCode() >= 400) {
-            throw new IOException("Server returned response code: " + conn.getResponseCode());
-        }
-
-        BufferedReader buf = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        while((buffer = buf.readLine()) != null) {
-            jsonToParse.append(buffer);
-        }
-
-        /*
-         * Disconnect from the server.
-         */
-        conn.disconnect();
+        String jsonToParse = HTTPClient.getString(searchUrl);
         
         /*
          * Parses the array and prepares the ArrayLists to be returned
          */
-        JSONObject object = new JSONObject(jsonToParse.toString());
+        JSONObject object = new JSONObject(jsonToParse);
         JSONArray parsedArray = object.getJSONObject("responseData").getJSONArray("results");
         for(int i = 0; i < parsedArray.length(); i++) {
             results.add(new GoogleResult(parsedArray.getJSONObject(i).getString("url"), parsedArray.getJSONObject(i).getString("titleNoFormatting")));
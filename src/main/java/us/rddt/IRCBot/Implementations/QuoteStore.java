@@ -0,0 +1,506 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import us.rddt.IRCBot.Database;
+import us.rddt.IRCBot.IRCUtils;
+
+/**
+ * Keeps every channel's quotes in memory so that picking a random quote and
+ * checking whether a shout is already known don't need the database. Quotes are
+ * loaded once on startup and kept up to date as quotes are added and deleted, so
+ * a shout only touches the database when it is new and has to be saved.
+ * 
+ * @author Ryan Morrison
+ */
+public class QuoteStore {
+    /*
+     * Class variables.
+     */
+    private static final ConcurrentMap<String,ChannelQuotes> channels = new ConcurrentHashMap<String,ChannelQuotes>();
+    private static final Random random = new Random();
+    private static volatile boolean loaded = false;
+
+    // Rough per-quote overhead in bytes: the Quote object, its Date, its slot in the array and its entries in the three maps
+    private static final int QUOTE_OVERHEAD = 40 + 24 + 4 + 64 + 64 + 96;
+    // Rough overhead in bytes of a String, not counting its characters
+    private static final int STRING_OVERHEAD = 40;
+
+    /**
+     * A single quote held in memory
+     */
+    public static final class Quote {
+        private final int id;
+        private final int ordinal;
+        private final String nick;
+        private final long date;
+        private final String quote;
+        private final long hash;
+
+        /**
+         * Class constructor
+         * @param id the ID of the quote in the database
+         * @param ordinal the number of the quote within its channel
+         * @param nick the nick of the user who shouted the quote
+         * @param date when the quote was shouted
+         * @param quote the text of the quote
+         */
+        public Quote(int id, int ordinal, String nick, Date date, String quote) {
+            this.id = id;
+            this.ordinal = ordinal;
+            this.nick = nick;
+            this.date = date.getTime();
+            this.quote = quote;
+            this.hash = IRCUtils.hashQuote(quote);
+        }
+
+        /**
+         * Returns the ID of the quote in the database
+         * @return the ID of the quote in the database
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Returns the number of the quote within its channel
+         * @return the number of the quote within its channel
+         */
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+        /**
+         * Returns the nick of the user who shouted the quote
+         * @return the nick of the user who shouted the quote
+         */
+        public String getNick() {
+            return nick;
+        }
+
+        /**
+         * Returns when the quote was shouted
+         * @return when the quote was shouted
+         */
+        public Date getDate() {
+            return new Date(date);
+        }
+
+        /**
+         * Returns the text of the quote
+         * @return the text of the quote
+         */
+        public String getQuote() {
+            return quote;
+        }
+    }
+
+    /**
+     * The number of quotes shouted by a single user
+     */
+    public static final class Shouter {
+        private final String nick;
+        private final int count;
+
+        /**
+         * Class constructor
+         * @param nick the nick of the user
+         * @param count the number of quotes the user has shouted
+         */
+        private Shouter(String nick, int count) {
+            this.nick = nick;
+            this.count = count;
+        }
+
+        /**
+         * Returns the nick of the user
+         * @return the nick of the user
+         */
+        public String getNick() {
+            return nick;
+        }
+
+        /**
+         * Returns the number of quotes the user has shouted
+         * @return the number of quotes the user has shouted
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Orders shouters from the most quotes to the fewest, then by nick
+     */
+    private static final Comparator<Shouter> MOST_QUOTES_FIRST = new Comparator<Shouter>() {
+        public int compare(Shouter first, Shouter second) {
+            if(first.count != second.count) return (first.count > second.count) ? -1 : 1;
+            return first.nick.compareToIgnoreCase(second.nick);
+        }
+    };
+
+    /**
+     * The quotes of a single channel
+     */
+    private static final class ChannelQuotes {
+        private Quote[] quotes = new Quote[16];
+        private int size = 0;
+        // Where each quote sits in the array, so it can be removed without searching
+        private final Map<Integer,Integer> positions = new HashMap<Integer,Integer>();
+        // The quotes by their number, for !who <number>
+        private final Map<Integer,Quote> ordinals = new HashMap<Integer,Quote>();
+        // The number the next quote will be given; numbers of deleted quotes are never handed out again
+        private int nextOrdinal = 1;
+        // The quotes with each hash, for finding duplicates without comparing every quote
+        private final Map<Long,List<Quote>> hashes = new HashMap<Long,List<Quote>>();
+        // How many quotes each user has shouted, keyed by lowercased nick as the database groups them
+        private final Map<String,Shouter> shouters = new HashMap<String,Shouter>();
+        // The same counts ordered for the leaderboard
+        private final TreeSet<Shouter> leaderboard = new TreeSet<Shouter>(MOST_QUOTES_FIRST);
+
+        /**
+         * Adds a quote
+         * @param quote the quote to add
+         */
+        private synchronized void add(Quote quote) {
+            if(positions.containsKey(quote.id)) return;
+            if(size == quotes.length) {
+                Quote[] grown = new Quote[quotes.length * 2];
+                System.arraycopy(quotes, 0, grown, 0, size);
+                quotes = grown;
+            }
+            positions.put(quote.id, size);
+            quotes[size++] = quote;
+            ordinals.put(quote.ordinal, quote);
+            if(quote.ordinal >= nextOrdinal) nextOrdinal = quote.ordinal + 1;
+            List<Quote> withHash = hashes.get(quote.hash);
+            if(withHash == null) {
+                withHash = new ArrayList<Quote>(1);
+                hashes.put(quote.hash, withHash);
+            }
+            withHash.add(quote);
+            changeCount(quote.nick, 1);
+        }
+
+        /**
+         * Removes a quote by moving the last quote into its place
+         * @param id the ID of the quote to remove
+         */
+        private synchronized void remove(int id) {
+            Integer position = positions.remove(id);
+            if(position == null) return;
+            Quote removed = quotes[position];
+            Quote last = quotes[--size];
+            quotes[size] = null;
+            if(position != size) {
+                quotes[position] = last;
+                positions.put(last.id, position);
+            }
+            ordinals.remove(removed.ordinal);
+            List<Quote> withHash = hashes.get(removed.hash);
+            withHash.remove(removed);
+            if(withHash.isEmpty()) hashes.remove(removed.hash);
+            changeCount(removed.nick, -1);
+        }
+
+        /**
+         * Changes the number of quotes a user has shouted and moves them on the leaderboard
+         * @param nick the nick of the user
+         * @param change the number of quotes to add (or remove, if negative)
+         */
+        private void changeCount(String nick, int change) {
+            String key = nick.toLowerCase(Locale.ENGLISH);
+            Shouter shouter = shouters.get(key);
+            int count = change;
+            if(shouter != null) {
+                leaderboard.remove(shouter);
+                count += shouter.count;
+                nick = shouter.nick;
+            }
+            if(count > 0) {
+                shouter = new Shouter(nick, count);
+                shouters.put(key, shouter);
+                leaderboard.add(shouter);
+            } else {
+                shouters.remove(key);
+            }
+        }
+
+        /**
+         * Returns the users who have shouted the most quotes
+         * @param limit the maximum number of users to return
+         * @return the users with the most quotes, most first
+         */
+        private synchronized List<Shouter> getTopShouters(int limit) {
+            List<Shouter> top = new ArrayList<Shouter>(Math.min(limit, leaderboard.size()));
+            Iterator<Shouter> iterator = leaderboard.iterator();
+            while(top.size() < limit && iterator.hasNext()) {
+                top.add(iterator.next());
+            }
+            return top;
+        }
+
+        /**
+         * Finds a quote by its text, ignoring case as the database does
+         * @param text the text of the quote
+         * @return the quote, or null if the channel doesn't have it
+         */
+        private synchronized Quote find(String text) {
+            List<Quote> withHash = hashes.get(IRCUtils.hashQuote(text));
+            if(withHash == null) return null;
+            for(Quote quote : withHash) {
+                if(quote.quote.equalsIgnoreCase(text)) return quote;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the quote with a number
+         * @param ordinal the number of the quote
+         * @return the quote, or null if there is no quote with the number
+         */
+        private synchronized Quote get(int ordinal) {
+            return ordinals.get(ordinal);
+        }
+
+        /**
+         * Makes sure the number of a deleted quote is never handed out again
+         * @param ordinal the number of the deleted quote
+         */
+        private synchronized void reserve(int ordinal) {
+            if(ordinal >= nextOrdinal) nextOrdinal = ordinal + 1;
+        }
+
+        /**
+         * Hands out the number for a new quote
+         * @return the number for the new quote
+         */
+        private synchronized int allocateOrdinal() {
+            return nextOrdinal++;
+        }
+
+        /**
+         * Checks to see if a number has ever been given to a quote
+         * @param ordinal the number to check
+         * @return true if the number has been given out, false if it has not
+         */
+        private synchronized boolean isAllocated(int ordinal) {
+            return ordinal > 0 && ordinal < nextOrdinal;
+        }
+
+        /**
+         * Returns a random quote
+         * @return a random quote, or null if the channel has no quotes
+         */
+        private synchronized Quote getRandom() {
+            if(size == 0) return null;
+            return quotes[random.nextInt(size)];
+        }
+
+        /**
+         * Returns the estimated memory used by the channel's quotes
+         * @return the estimated memory used in bytes
+         */
+        private synchronized long getEstimatedSize() {
+            long bytes = 0;
+            for(int i = 0; i < size; i++) {
+                bytes += QUOTE_OVERHEAD + 2 * STRING_OVERHEAD + 2 * (quotes[i].nick.length() + quotes[i].quote.length());
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Returns the quotes of a channel, creating an empty set if needed
+     * @param channel the channel to return the quotes of
+     * @return the channel's quotes
+     */
+    private static ChannelQuotes getChannel(String channel) {
+        ChannelQuotes quotes = channels.get(channel);
+        if(quotes == null) {
+            ChannelQuotes created = new ChannelQuotes();
+            quotes = channels.putIfAbsent(channel, created);
+            if(quotes == null) quotes = created;
+        }
+        return quotes;
+    }
+
+    /**
+     * Loads every quote from the database
+     * @param database the database to load from
+     * @throws SQLException if the quotes cannot be loaded
+     */
+    public static synchronized void load(Database database) throws SQLException {
+        if(loaded) return;
+        ResultSet resultSet = database.executeQuery("SELECT ID, Ordinal, Nick, Date, Channel, Quote, Deleted FROM Quotes");
+        while(resultSet.next()) {
+            // Deleted quotes are only kept to hold on to their numbers
+            if(resultSet.getInt("Deleted") != 0) {
+                getChannel(resultSet.getString("Channel")).reserve(resultSet.getInt("Ordinal"));
+                continue;
+            }
+            getChannel(resultSet.getString("Channel")).add(new Quote(resultSet.getInt("ID"), resultSet.getInt("Ordinal"), resultSet.getString("Nick"), resultSet.getTimestamp("Date"), resultSet.getString("Quote")));
+        }
+        resultSet.close();
+        loaded = true;
+    }
+
+    /**
+     * Checks to see if the quotes have been loaded
+     * @return true if the quotes have been loaded, false if they have not
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns a random quote from a channel
+     * @param channel the channel to pick a quote from
+     * @return a random quote, or null if the channel has no quotes
+     */
+    public static Quote getRandom(String channel) {
+        ChannelQuotes quotes = channels.get(channel);
+        return (quotes == null) ? null : quotes.getRandom();
+    }
+
+    /**
+     * Finds a quote in a channel by its text
+     * @param channel the channel to search
+     * @param text the text of the quote
+     * @return the quote, or null if the channel doesn't have it
+     */
+    public static Quote find(String channel, String text) {
+        ChannelQuotes quotes = channels.get(channel);
+        return (quotes == null) ? null : quotes.find(text);
+    }
+
+    /**
+     * Returns a quote from a channel by its number
+     * @param channel the channel the quote is in
+     * @param ordinal the number of the quote
+     * @return the quote, or null if there is no quote with the number
+     */
+    public static Quote get(String channel, int ordinal) {
+        ChannelQuotes quotes = channels.get(channel);
+        return (quotes == null) ? null : quotes.get(ordinal);
+    }
+
+    /**
+     * Hands out the number for a new quote in a channel
+     * @param channel the channel the quote is being added to
+     * @return the number for the new quote
+     */
+    public static int allocateOrdinal(String channel) {
+        return getChannel(channel).allocateOrdinal();
+    }
+
+    /**
+     * Checks to see if a number has been given to a quote in a channel, even if the quote has since been deleted
+     * @param channel the channel to check
+     * @param ordinal the number to check
+     * @return true if the number has been given out, false if it has not
+     */
+    public static boolean isAllocated(String channel, int ordinal) {
+        ChannelQuotes quotes = channels.get(channel);
+        return quotes != null && quotes.isAllocated(ordinal);
+    }
+
+    /**
+     * Returns the number of quotes in a channel
+     * @param channel the channel to count the quotes of
+     * @return the number of quotes in the channel
+     */
+    public static int getCount(String channel) {
+        ChannelQuotes quotes = channels.get(channel);
+        if(quotes == null) return 0;
+        synchronized(quotes) {
+            return quotes.size;
+        }
+    }
+
+    /**
+     * Returns the users who have shouted the most quotes in a channel
+     * @param channel the channel to rank the users of
+     * @param limit the maximum number of users to return
+     * @return the users with the most quotes, most first
+     */
+    public static List<Shouter> getTopShouters(String channel, int limit) {
+        ChannelQuotes quotes = channels.get(channel);
+        return (quotes == null) ? new ArrayList<Shouter>() : quotes.getTopShouters(limit);
+    }
+
+    /**
+     * Records a quote being added to a channel
+     * @param channel the channel the quote was added to
+     * @param quote the new quote
+     */
+    public static void add(String channel, Quote quote) {
+        getChannel(channel).add(quote);
+    }
+
+    /**
+     * Records a quote being deleted from a channel
+     * @param channel the channel the quote was deleted from
+     * @param id the ID of the deleted quote
+     */
+    public static void remove(String channel, int id) {
+        ChannelQuotes quotes = channels.get(channel);
+        if(quotes != null) quotes.remove(id);
+    }
+
+    /**
+     * Returns the statistics of the store
+     * @return the number of quotes held and an estimate of the memory they use
+     */
+    public static String getStatistics() {
+        long count = 0, bytes = 0;
+        for(ChannelQuotes quotes : channels.values()) {
+            synchronized(quotes) {
+                count += quotes.size;
+            }
+            bytes += quotes.getEstimatedSize();
+        }
+        return "Quote store: " + count + " quotes in " + channels.size() + " channels, about " + (count == 0 ? 0 : bytes / count) + " bytes per quote (" + (bytes / 1024) + " KB total)";
+    }
+}
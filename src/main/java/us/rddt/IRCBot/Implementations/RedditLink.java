@@ -28,9 +28,7 @@
 
 package us.rddt.IRCBot.Implementations;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
@@ -42,6 +40,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.HTTPClient;
 import us.rddt.IRCBot.IRCUtils;
 
 /**
@@ -100,34 +99,14 @@ public class RedditLink {
      */
     public static RedditLink getLink(URL link) throws IOException, JSONException {
         /*
-         * Variables.
-         */
-        StringBuilder jsonToParse = new StringBuilder();
-        String buffer;
-
-        /*
-         * Opens a connection to the provided URL, and downloads the data into a temporary variable.
-         */
-        HttpURLConnection conn = (HttpURLConnection)link.openConnection();
-        conn.setRequestProperty("User-Agent", Configuration.getUserAgent());
-        if(conn.getResponseCode() >= 400) {
-            throw new IOException("Server returned response code: " + conn.getResponseCode());
-        }
-
-        BufferedReader buf = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        while((buffer = buf.readLine()) != null) {
-            jsonToParse.append(buffer);
-        }
-
-        /*
-         * Disconnect from the server.
+         * Downloads the data from the provided URL into a temporary variable.
          */
-        conn.disconnect();
+        String jsonToParse = HTTPClient.getString(link);
 
         /*
          * Parse the JSON data.
          */
-        JSONArray parsedArray = new JSONArray(jsonToParse.toString());
+        JSONArray parsedArray = new JSONArray(jsonToParse);
         JSONObject redditLink = parsedArray.getJSONObject(0).getJSONObject("data").getJSONArray("children").getJSONObject(0).getJSONObject("data");
         return new RedditLink(redditLink.getString("id"),
                 IRCUtils.escapeHTMLEntities(redditLink.getString("title")),
@@ -150,36 +129,26 @@ public class RedditLink {
         /*
          * Variables.
          */
-        StringBuilder jsonToParse = new StringBuilder();
-        String buffer;
 
         ArrayList<RedditLink> submissions = new ArrayList<RedditLink>();
 
         /*
-         * Opens a connection to the provided URL, and downloads the data into a temporary variable.
+         * Downloads the data from the provided URL into a temporary variable.
+         * Anything other than a 200 means the lookup didn't happen, so treat it as an error.
          */
-        HttpURLConnection conn = (HttpURLConnection)link.openConnection();
-        conn.setRequestProperty("User-Agent", Configuration.getUserAgent());
+        HttpURLConnection conn = HTTPClient.open(link);
+        HTTPClient.checkResponse(conn);
+        String jsonToParse = HTTPClient.readString(conn);
         if(conn.getResponseCode() != 200) {
             throw new IOException("Server returned response code: " + conn.getResponseCode());
         }
 
-        BufferedReader buf = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        while((buffer = buf.readLine()) != null) {
-            jsonToParse.append(buffer);
-        }
-
-        /*
-         * Disconnect from the server.
-         */
-        conn.disconnect();
-
         /*
          * Parse each submission into an ArrayList of RedditLink classes.
          * Return the best possible submission.
          * If there are no submissions at all, return null instead.
          */
-        JSONObject parsedArray = new JSONObject(jsonToParse.toString());
+        JSONObject parsedArray = new JSONObject(jsonToParse);
         if(parsedArray.getJSONObject("data").getJSONArray("children").length() > 0) {
             for(int i = 0; i < parsedArray.getJSONObject("data").getJSONArray("children").length(); i++) {
                 submissions.add(new RedditLink(parsedArray.getJSONObject("data").getJSONArray("children").getJSONObject(i).getJSONObject("data").getString("id"),
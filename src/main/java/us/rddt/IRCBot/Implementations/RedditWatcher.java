@@ -28,10 +28,7 @@
 
 package us.rddt.IRCBot.Implementations;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collections;
@@ -40,12 +37,13 @@ import java.util.Map;
 
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.pircbotx.Channel;
 import org.pircbotx.Colors;
 import org.pircbotx.PircBotX;
 
-import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.Enums.MessagePriorities;
+import us.rddt.IRCBot.HTTPClient;
 import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.MessageQueue;
 
 /**
  * Using the reddit API, this class is capable of "watching" a subreddit and
@@ -96,35 +94,19 @@ public class RedditWatcher implements Runnable {
         /*
          * Variables.
          */
-        StringBuilder jsonToParse = new StringBuilder();
-        String buffer;
         URL link = new URL("http://www.reddit.com/r/" + subreddit + "/new/.json?sort=new");
 
         /*
-         * Opens a connection to the provided URL, and downloads the data into a temporary variable.
+         * Downloads the data from the provided URL into a temporary variable.
          */
-        HttpURLConnection conn = (HttpURLConnection)link.openConnection();
-        conn.setRequestProperty("User-Agent", Configuration.getUserAgent());
-        if(conn.getResponseCode() >= 400) {
-            throw new IOException("Server returned response code: " + conn.getResponseCode());
-        }
-
-        BufferedReader buf = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        while((buffer = buf.readLine()) != null) {
-            jsonToParse.append(buffer);
-        }
-
-        /*
-         * Disconnect from the server.
-         */
-        conn.disconnect();
+        String jsonToParse = HTTPClient.getString(link);
         /*
          * Parse the first submission from the subreddit's new queue.
          * If there is no saved submission, save it but don't display it as that's our benchmark for determining
          * if a submission is truly new.
          * If there are no submissions at all, simply return.
          */
-        JSONObject parsedArray = new JSONObject(jsonToParse.toString());
+        JSONObject parsedArray = new JSONObject(jsonToParse);
         if(parsedArray.getJSONObject("data").getJSONArray("children").length() > 0) {
             RedditLink newLink = new RedditLink(parsedArray.getJSONObject("data").getJSONArray("children").getJSONObject(0).getJSONObject("data").getString("id"),
                     IRCUtils.escapeHTMLEntities(parsedArray.getJSONObject("data").getJSONArray("children").getJSONObject(0).getJSONObject("data").getString("title")),
@@ -152,12 +134,10 @@ public class RedditWatcher implements Runnable {
      * @param redditLink the reddit submission to update
      */
     private void updateChannels(RedditLink redditLink) {
-        for(Channel c : bot.getChannels()) {
-            if(redditLink.isOver18()) {
-                bot.sendMessage(c, "[r/" + redditLink.getSubreddit() + "] " + redditLink.getTitle() + " (submitted by " + redditLink.getAuthor() + " about " +  redditLink.getCreatedReadableUTC() + " ago, " + redditLink.getScore() + " points: http://redd.it/" + redditLink.getId() + ") " + Colors.BOLD + Colors.RED + "[NSFW]");
-            } else {
-                bot.sendMessage(c, "[r/" + redditLink.getSubreddit() + "] " + redditLink.getTitle() + " (submitted by " + redditLink.getAuthor() + " about " +  redditLink.getCreatedReadableUTC() + " ago, " + redditLink.getScore() + " points: http://redd.it/" + redditLink.getId() + ")");
-            }
+        if(redditLink.isOver18()) {
+            MessageQueue.sendMessage(bot.getChannels(), "[r/" + redditLink.getSubreddit() + "] " + redditLink.getTitle() + " (submitted by " + redditLink.getAuthor() + " about " +  redditLink.getCreatedReadableUTC() + " ago, " + redditLink.getScore() + " points: http://redd.it/" + redditLink.getId() + ") " + Colors.BOLD + Colors.RED + "[NSFW]", MessagePriorities.ANNOUNCEMENT);
+        } else {
+            MessageQueue.sendMessage(bot.getChannels(), "[r/" + redditLink.getSubreddit() + "] " + redditLink.getTitle() + " (submitted by " + redditLink.getAuthor() + " about " +  redditLink.getCreatedReadableUTC() + " ago, " + redditLink.getScore() + " points: http://redd.it/" + redditLink.getId() + ")", MessagePriorities.ANNOUNCEMENT);
         }
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.Database;
+import us.rddt.IRCBot.IRCUtils;
+
+/**
+ * Buffers the times users were last seen leaving a channel and writes them to the
+ * database in batches, rather than making a round trip to the database for every
+ * part and quit. Only the latest time is kept for each nick and channel, so a
+ * netsplit costs one batch instead of a query per user per channel.
+ * 
+ * @author Ryan Morrison
+ */
+public class SeenBuffer {
+    /*
+     * Class variables.
+     */
+    private static final ConcurrentMap<SeenKey,Timestamp> buffer = new ConcurrentHashMap<SeenKey,Timestamp>();
+    private static final Object flushLock = new Object();
+    private static volatile ScheduledExecutorService flusher;
+
+    /**
+     * A nick and the channel it was seen leaving. Nicks and channels are compared
+     * without regard to case, as IRC and the Seen table's lookups treat them.
+     */
+    private static final class SeenKey {
+        private final String nick;
+        private final String channel;
+        private final String normalizedNick;
+        private final String normalizedChannel;
+
+        /**
+         * Class constructor
+         * @param nick the nick of the user
+         * @param channel the channel the user left
+         */
+        private SeenKey(String nick, String channel) {
+            this.nick = nick;
+            this.channel = channel;
+            this.normalizedNick = nick.toLowerCase(Locale.ENGLISH);
+            this.normalizedChannel = channel.toLowerCase(Locale.ENGLISH);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        public boolean equals(Object other) {
+            if(!(other instanceof SeenKey)) return false;
+            SeenKey key = (SeenKey)other;
+            return normalizedNick.equals(key.normalizedNick) && normalizedChannel.equals(key.normalizedChannel);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Object#hashCode()
+         */
+        public int hashCode() {
+            return normalizedNick.hashCode() * 31 + normalizedChannel.hashCode();
+        }
+    }
+
+    /**
+     * Starts flushing the buffer to the database periodically
+     */
+    public static synchronized void start() {
+        if(flusher != null) return;
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SeenBuffer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long interval = Configuration.getSeenFlushInterval();
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops flushing the buffer periodically and writes anything left in it to the database
+     */
+    public static synchronized void shutdown() {
+        if(flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+        flush();
+    }
+
+    /**
+     * Records a user leaving a channel
+     * @param nick the nick of the user
+     * @param channel the channel the user left
+     */
+    public static void record(String nick, String channel) {
+        buffer.put(new SeenKey(nick, channel), new Timestamp(System.currentTimeMillis()));
+        // Don't wait for the timer if the buffer is filling up quickly
+        ScheduledExecutorService currentFlusher = flusher;
+        if(currentFlusher != null && buffer.size() >= Configuration.getSeenFlushSize()) {
+            try {
+                currentFlusher.execute(new Runnable() {
+                    public void run() {
+                        if(buffer.size() >= Configuration.getSeenFlushSize()) flush();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // We're shutting down, the final flush will pick it up
+            }
+        }
+    }
+
+    /**
+     * Returns when a user was last seen leaving a channel, if it hasn't been written to the database yet
+     * @param nick the nick of the user
+     * @param channel the channel the user left
+     * @return when the user was last seen, or null if the buffer doesn't hold it
+     */
+    public static Timestamp getLastSeen(String nick, String channel) {
+        return buffer.get(new SeenKey(nick, channel));
+    }
+
+    /**
+     * Writes everything in the buffer to the database
+     */
+    public static void flush() {
+        synchronized(flushLock) {
+            if(!buffer.isEmpty()) writeBuffer();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the buffer to the database in a single batch of upserts
+     */
+    private static void writeBuffer() {
+        // Take a snapshot of the buffer, leaving any newer times recorded in the meantime for the next flush
+        List<SeenKey> keys = new ArrayList<SeenKey>();
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for(Map.Entry<SeenKey,Timestamp> entry : buffer.entrySet()) {
+            if(buffer.remove(entry.getKey(), entry.getValue())) {
+                keys.add(entry.getKey());
+                rows.add(new Object[] { entry.getKey().nick, entry.getKey().channel, entry.getValue() });
+            }
+        }
+        if(rows.isEmpty()) return;
+        Database database = new Database();
+        try {
+            database.connect();
+            Connection connection = database.getConnection();
+            connection.setAutoCommit(false);
+            database.executeUpsertBatch("Seen", new String[] { "Nick", "Channel" }, new String[] { "Date" }, rows);
+            connection.commit();
+            connection.setAutoCommit(true);
+        } catch (Exception ex) {
+            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+            // Put the times back to try again on the next flush, unless a newer time has been recorded
+            for(int i = 0; i < keys.size(); i++) {
+                buffer.putIfAbsent(keys.get(i), (Timestamp)rows.get(i)[2]);
+            }
+        } finally {
+            database.disconnect();
+        }
+    }
+}
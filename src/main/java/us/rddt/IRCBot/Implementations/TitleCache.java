@@ -0,0 +1,179 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import us.rddt.IRCBot.Configuration;
+
+/**
+ * Remembers the titles of pages which have been fetched recently, so a link pasted
+ * again doesn't have to be fetched again. Fetches which failed are remembered too,
+ * for a shorter time, so a dead link doesn't cost a connection every time it is
+ * pasted. When the cache is full the least recently used page is forgotten.
+ * 
+ * @author Ryan Morrison
+ */
+public class TitleCache {
+    /*
+     * Class variables.
+     */
+    // Access-ordered so that the least recently used page is dropped when the cache is full
+    private static final Map<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+            if(size() <= Configuration.getTitleCacheSize()) return false;
+            evictions++;
+            return true;
+        }
+    };
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long evictions = 0;
+
+    /**
+     * The remembered result of fetching a page
+     */
+    public static final class Entry {
+        private final String result;
+        private final boolean failure;
+        private final long expiresAt;
+
+        /**
+         * Class constructor
+         * @param result the formatted title, or the reason the fetch failed
+         * @param failure true if the fetch failed, false if it succeeded
+         * @param ttl the time in milliseconds to remember the result for
+         */
+        private Entry(String result, boolean failure, long ttl) {
+            this.result = result;
+            this.failure = failure;
+            this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+        }
+
+        /**
+         * Returns the formatted title, or the reason the fetch failed
+         * @return the formatted title, or the reason the fetch failed
+         */
+        public String getResult() {
+            return result;
+        }
+
+        /**
+         * Checks to see if the fetch failed
+         * @return true if the fetch failed, false if it succeeded
+         */
+        public boolean isFailure() {
+            return failure;
+        }
+
+        /**
+         * Checks to see if the result is too old to use
+         * @param now the current value of System.nanoTime()
+         * @return true if the result has expired, false if it has not
+         */
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * Looks up the remembered result of fetching a page
+     * @param url the URL of the page
+     * @return the result, or null if the page hasn't been fetched recently
+     */
+    public static synchronized Entry get(URL url) {
+        String key = getKey(url);
+        Entry entry = entries.get(key);
+        if(entry != null && entry.isExpired(System.nanoTime())) {
+            entries.remove(key);
+            entry = null;
+        }
+        if(entry == null) misses++;
+        else hits++;
+        return entry;
+    }
+
+    /**
+     * Remembers the title of a page
+     * @param url the URL of the page
+     * @param title the formatted title of the page
+     */
+    public static void putTitle(URL url, String title) {
+        put(url, new Entry(title, false, Configuration.getTitleCacheTTL()));
+    }
+
+    /**
+     * Remembers that fetching a page failed
+     * @param url the URL of the page
+     * @param reason the reason the fetch failed
+     */
+    public static void putFailure(URL url, String reason) {
+        put(url, new Entry(reason, true, Configuration.getTitleCacheNegativeTTL()));
+    }
+
+    /**
+     * Remembers the result of fetching a page, unless caching is turned off
+     * @param url the URL of the page
+     * @param entry the result to remember
+     */
+    private static synchronized void put(URL url, Entry entry) {
+        if(Configuration.getTitleCacheSize() <= 0) return;
+        entries.put(getKey(url), entry);
+    }
+
+    /**
+     * Normalizes a URL so that different ways of writing the same page share an entry.
+     * The scheme and host are put in lower case, the default port and any fragment are
+     * dropped and an empty path becomes "/".
+     * @param url the URL to normalize
+     * @return the normalized URL
+     */
+    static String getKey(URL url) {
+        StringBuilder key = new StringBuilder();
+        key.append(url.getProtocol().toLowerCase(Locale.ENGLISH)).append("://").append(url.getHost().toLowerCase(Locale.ENGLISH));
+        if(url.getPort() != -1 && url.getPort() != url.getDefaultPort()) key.append(':').append(url.getPort());
+        key.append(url.getPath().length() == 0 ? "/" : url.getPath());
+        if(url.getQuery() != null) key.append('?').append(url.getQuery());
+        return key.toString();
+    }
+
+    /**
+     * Returns the statistics of the title cache
+     * @return the title cache's counters in a human-readable format
+     */
+    public static synchronized String getStatistics() {
+        return "Title cache: " + entries.size() + " entries, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Finds the title of an HTML page by scanning its raw bytes as they arrive, stopping
+ * as soon as the closing title tag has been read. The page is fed in whatever pieces
+ * it is read in, and the scan carries on from where the last piece ended, so no byte
+ * is looked at twice. Tag names are matched without regard to case and may carry
+ * attributes, comments are skipped, and the contents of scripts and style sheets are
+ * passed over so that markup inside them isn't mistaken for the title. If the server
+ * didn't name a character set, one given by a meta tag before the title is used to
+ * decode it.
+ * 
+ * @author Ryan Morrison
+ */
+public class TitleExtractor {
+    /*
+     * Class variables.
+     */
+    private static final byte[] TITLE_END = ascii("</title");
+    private static final byte[] SCRIPT_END = ascii("</script");
+    private static final byte[] STYLE_END = ascii("</style");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // Longest tag name we need to recognize
+    private static final int MAX_NAME = 6;
+    // Meta tags are only searched for a character set up to this many bytes
+    private static final int MAX_META = 512;
+
+    /**
+     * Where the scan is in the page
+     */
+    private enum State {
+        TEXT, TAG_START, NAME, DECLARATION, DECLARATION_DASH, COMMENT, TAG, META, TITLE, RAW, DONE
+    }
+
+    private State state = State.TEXT;
+    // The state to go to once the tag being skipped has ended
+    private State afterTag;
+    private final byte[] name = new byte[MAX_NAME];
+    private int nameLength;
+    private int quote;
+    private int dashes;
+    private final StringBuilder meta = new StringBuilder();
+    private Charset metaCharset;
+    // The closing tag being looked for, and how much of it has been matched
+    private byte[] end;
+    private int matched;
+    private byte[] title = new byte[128];
+    private int titleLength;
+
+    /**
+     * Reads a page until its title has been found. The stream is left open for the
+     * caller to close.
+     * @param in the stream to read the page from
+     * @param charset the character set given by the server, or null if it didn't give one
+     * @param limit the most bytes to read before giving up
+     * @return the text of the title, or null if the page has no title within the limit
+     * @throws IOException if the page could not be read
+     */
+    public static String extract(InputStream in, Charset charset, int limit) throws IOException {
+        TitleExtractor extractor = new TitleExtractor();
+        byte[] buf = new byte[4096];
+        int remaining = limit;
+        while(remaining > 0) {
+            int n = in.read(buf, 0, Math.min(buf.length, remaining));
+            if(n <= 0) break;
+            remaining -= n;
+            if(extractor.feed(buf, 0, n)) break;
+        }
+        return extractor.getTitle(charset);
+    }
+
+    /**
+     * Scans the next piece of the page
+     * @param data the buffer holding the piece
+     * @param offset the offset of the piece in the buffer
+     * @param length the length of the piece
+     * @return true if the title has been read, false if more of the page is needed
+     */
+    public boolean feed(byte[] data, int offset, int length) {
+        int i = offset, stop = offset + length;
+        while(i < stop && state != State.DONE) {
+            if(scan(data[i] & 0xff)) i++;
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * Returns the title once it has been read
+     * @param charset the character set given by the server, or null if it didn't give one
+     * @return the text of the title, or null if it hasn't been read
+     */
+    public String getTitle(Charset charset) {
+        if(state != State.DONE) return null;
+        if(charset == null) charset = metaCharset;
+        if(charset == null) charset = UTF8;
+        return new String(title, 0, titleLength, charset);
+    }
+
+    /**
+     * Moves the scan on by one byte
+     * @param c the byte
+     * @return true if the byte was used, false if it must be scanned again in the new state
+     */
+    private boolean scan(int c) {
+        switch(state) {
+        case TEXT:
+            if(c == '<') state = State.TAG_START;
+            return true;
+        case TAG_START:
+            if(c == '!') {
+                state = State.DECLARATION;
+            } else if(c == '/' || c == '?') {
+                skipTag(State.TEXT);
+            } else if(isLetter(c)) {
+                name[0] = (byte)toLower(c);
+                nameLength = 1;
+                state = State.NAME;
+            } else {
+                // A stray '<' in the text, look at what follows it again
+                state = State.TEXT;
+                return false;
+            }
+            return true;
+        case NAME:
+            if(isNameChar(c)) {
+                // Remember only as much of the name as we need to compare
+                if(nameLength < MAX_NAME) name[nameLength] = (byte)toLower(c);
+                nameLength++;
+                return true;
+            }
+            startTag();
+            return false;
+        case DECLARATION:
+            if(c == '-') state = State.DECLARATION_DASH;
+            else if(c == '>') state = State.TEXT;
+            else skipTag(State.TEXT);
+            return true;
+        case DECLARATION_DASH:
+            if(c == '-') {
+                dashes = 0;
+                state = State.COMMENT;
+            } else {
+                skipTag(State.TEXT);
+            }
+            return true;
+        case COMMENT:
+            // A comment ends at the first "-->"
+            if(c == '>' && dashes >= 2) state = State.TEXT;
+            dashes = (c == '-') ? dashes + 1 : 0;
+            return true;
+        case TAG:
+            // Quoted attribute values may contain '>'
+            if(quote != 0) {
+                if(c == quote) quote = 0;
+            } else if(c == '"' || c == '\'') {
+                quote = c;
+            } else if(c == '>') {
+                state = afterTag;
+                matched = 0;
+                titleLength = 0;
+            }
+            return true;
+        case META:
+            if(quote != 0) {
+                if(c == quote) quote = 0;
+            } else if(c == '"' || c == '\'') {
+                quote = c;
+            } else if(c == '>') {
+                if(metaCharset == null) metaCharset = getCharset(meta);
+                state = State.TEXT;
+                return true;
+            }
+            if(meta.length() < MAX_META) meta.append((char)toLower(c));
+            return true;
+        case TITLE:
+            if(titleLength == title.length) title = Arrays.copyOf(title, titleLength * 2);
+            title[titleLength++] = (byte)c;
+            if(matchEnd(c)) {
+                titleLength -= TITLE_END.length;
+                state = State.DONE;
+            }
+            return true;
+        case RAW:
+            if(matchEnd(c)) skipTag(State.TEXT);
+            return true;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Decides what to do with a tag once its name has been read
+     */
+    private void startTag() {
+        if(isTag(name, nameLength, "title")) {
+            end = TITLE_END;
+            skipTag(State.TITLE);
+        } else if(isTag(name, nameLength, "meta")) {
+            meta.setLength(0);
+            quote = 0;
+            state = State.META;
+        } else if(isTag(name, nameLength, "script")) {
+            end = SCRIPT_END;
+            skipTag(State.RAW);
+        } else if(isTag(name, nameLength, "style")) {
+            end = STYLE_END;
+            skipTag(State.RAW);
+        } else {
+            skipTag(State.TEXT);
+        }
+    }
+
+    /**
+     * Skips the rest of a tag
+     * @param next the state to go to once the tag has ended
+     */
+    private void skipTag(State next) {
+        quote = 0;
+        afterTag = next;
+        state = State.TAG;
+    }
+
+    /**
+     * Matches a byte against the closing tag being looked for, ignoring case
+     * @param c the byte
+     * @return true if the closing tag has been read, false if it hasn't
+     */
+    private boolean matchEnd(int c) {
+        if(toLower(c) == end[matched]) {
+            return ++matched == end.length;
+        }
+        // The closing tags hold only one '<', so a partial match can only restart at a new tag
+        matched = (c == '<') ? 1 : 0;
+        return false;
+    }
+
+    /**
+     * Finds the character set named in the attributes of a meta tag. This covers both
+     * the charset attribute and a Content-Type given through http-equiv.
+     * @param tag the attributes of the tag in lower case
+     * @return the character set, or null if none was named or it isn't supported
+     */
+    private static Charset getCharset(CharSequence tag) {
+        String attributes = tag.toString();
+        int index = attributes.indexOf("charset");
+        if(index == -1) return null;
+        index += 7;
+        // Skip the equals sign and any spaces or quotes around it
+        while(index < attributes.length() && " \t\r\n=\"'".indexOf(attributes.charAt(index)) != -1) index++;
+        int end = index;
+        while(end < attributes.length() && (Character.isLetterOrDigit(attributes.charAt(end)) || "-_.:".indexOf(attributes.charAt(end)) != -1)) end++;
+        String name = attributes.substring(index, end);
+        // Pages which claim to be UTF-16 but were readable as ASCII are really UTF-8
+        if(name.startsWith("utf-16")) return UTF8;
+        try {
+            if(name.length() > 0 && Charset.isSupported(name)) return Charset.forName(name);
+        } catch (IllegalArgumentException ex) {
+            // An illegal character set name, ignore it
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a tag name read from the page is the given name
+     * @param name the start of the tag name read, in lower case
+     * @param length the full length of the tag name read
+     * @param expected the tag name to compare with, in lower case
+     * @return true if the names are the same, false if they are not
+     */
+    private static boolean isTag(byte[] name, int length, String expected) {
+        if(length != expected.length()) return false;
+        for(int i = 0; i < length; i++) {
+            if(name[i] != expected.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a byte is an ASCII letter
+     * @param c the byte to check
+     * @return true if the byte is a letter, false if it is not
+     */
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Checks whether a byte can be part of a tag name
+     * @param c the byte to check
+     * @return true if the byte can be part of a tag name, false if it cannot
+     */
+    private static boolean isNameChar(int c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == ':';
+    }
+
+    /**
+     * Converts an ASCII upper case letter to lower case, leaving any other byte untouched
+     * @param c the byte to convert
+     * @return the converted byte
+     */
+    private static int toLower(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+    }
+
+    /**
+     * Converts a string of ASCII characters to bytes
+     * @param s the string to convert
+     * @return the bytes of the string
+     */
+    private static byte[] ascii(String s) {
+        return s.getBytes(Charset.forName("US-ASCII"));
+    }
+}
@@ -0,0 +1,572 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.pircbotx.Colors;
+
+import us.rddt.IRCBot.AsyncHTTPClient;
+import us.rddt.IRCBot.AsyncHTTPClient.Response;
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.IRCUtils;
+
+/**
+ * Fetches the titles of web pages in the background. URLGrabber hands a page over
+ * and returns straight away, so the dispatcher's workers aren't held for the DNS
+ * lookup, connect and download. Fetches are run by AsyncHTTPClient's selector
+ * threads rather than a thread each, so a few threads serve every fetch in
+ * progress. Each fetch has a deadline counted from when it was requested; if the
+ * page hasn't been read by then its connection is closed and the callback is told
+ * that it timed out. The callback is called exactly once.
+ * <p>
+ * If a page is requested while it is already being fetched, for example because
+ * the same link was pasted in several channels at once, the later callers wait
+ * for the fetch in progress instead of starting another one.
+ * 
+ * @author Ryan Morrison
+ */
+public class TitleFetcher {
+    /*
+     * Class variables.
+     */
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicLong completed = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong timedOut = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+    private static final AtomicLong shared = new AtomicLong();
+    // Extensions of links which are fetched straight away rather than probed first
+    private static final Set<String> PAGE_EXTENSIONS = new HashSet<String>(Arrays.asList("htm", "html", "xhtml", "shtml", "php", "asp", "aspx", "jsp", "cgi", "pl", "cfm"));
+    private static final int MAX_REDIRECTS = 5;
+    // Fetches in progress, by normalized URL
+    private static final ConcurrentMap<String,Request> inFlight = new ConcurrentHashMap<String,Request>();
+
+    /**
+     * Receives the result of a title fetch. The methods are called from one of the
+     * HTTP client's selector threads, or from fetch() itself when the result is known
+     * straight away, so they must not block.
+     */
+    public interface Callback {
+        /**
+         * Called when the title has been fetched
+         * @param title the formatted title of the page, or a description of the file if it isn't a page
+         */
+        void completed(String title);
+
+        /**
+         * Called when the title could not be fetched or timed out
+         * @param ex the reason the fetch failed
+         */
+        void failed(Exception ex);
+    }
+
+    /**
+     * The requests a fetch is made up of
+     */
+    private enum Step {
+        // A HEAD request, to find out what a link which looks like a file is
+        PROBE,
+        // A GET for the first byte, for servers which refuse HEAD
+        RANGE_PROBE,
+        // A GET for the page itself
+        PAGE
+    }
+
+    /**
+     * A title fetch which has been requested
+     */
+    public static final class Request {
+        private final URL url;
+        private final String key;
+        private final List<Callback> callbacks = new ArrayList<Callback>(1);
+        private final long deadlineAt;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private volatile boolean cancelled = false;
+        private volatile boolean counted = false;
+        private volatile AsyncHTTPClient.Call call;
+        private int redirects = 0;
+
+        /**
+         * Class constructor
+         * @param url the URL of the page to fetch
+         * @param key the normalized URL of the page
+         * @param callback the callback to give the result to
+         * @param deadline the time in milliseconds the fetch has to finish
+         */
+        private Request(URL url, String key, Callback callback, long deadline) {
+            this.url = url;
+            this.key = key;
+            this.callbacks.add(callback);
+            this.deadlineAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline);
+        }
+
+        /**
+         * Stops giving the result to a caller, who is not told anything more. The
+         * connection is only closed once no other callers are waiting for the page.
+         * @param callback the callback the caller passed to fetch()
+         */
+        public void cancel(Callback callback) {
+            synchronized(this) {
+                if(finished.get() || !callbacks.remove(callback) || !callbacks.isEmpty()) return;
+                cancelled = true;
+                finished.set(true);
+            }
+            release();
+            AsyncHTTPClient.Call current = call;
+            if(current != null) current.cancel();
+        }
+
+        /**
+         * Checks to see if the fetch has finished, failed or been cancelled
+         * @return true if the callback has been called, false if it has not
+         */
+        public boolean isDone() {
+            return finished.get();
+        }
+
+        /**
+         * Starts fetching a URL, probing it first unless it looks like a page
+         * @param target the URL to fetch
+         */
+        private void begin(URL target) {
+            send(target, looksLikePage(target) ? Step.PAGE : Step.PROBE);
+        }
+
+        /**
+         * Sends one of the requests making up the fetch
+         * @param target the URL to request
+         * @param step which request to send
+         */
+        private void send(URL target, Step step) {
+            if(cancelled || finished.get()) return;
+            String method = (step == Step.PROBE) ? "HEAD" : "GET";
+            Map<String,String> headers = (step == Step.RANGE_PROBE) ? Collections.singletonMap("Range", "bytes=0-0") : null;
+            try {
+                call = AsyncHTTPClient.send(target, method, headers, deadlineAt, new Exchange(step));
+            } catch (IllegalStateException ex) {
+                // The client was shut down, possibly between two steps of the fetch
+                fail(new IOException("Page titles aren't being fetched right now"));
+                return;
+            }
+            // Close the connection if the fetch was cancelled while it was being opened
+            if(cancelled) call.cancel();
+        }
+
+        /**
+         * Finishes the fetch with a title, remembering it for later pastes
+         * @param title the formatted title
+         */
+        private void succeed(String title) {
+            TitleCache.putTitle(url, title);
+            complete(title);
+        }
+
+        /**
+         * Finishes the fetch with an error, remembering it for later pastes unless the fetch was cancelled
+         * @param ex the reason the fetch failed
+         */
+        private void error(Exception ex) {
+            if(ex instanceof SocketTimeoutException) {
+                timedOut.incrementAndGet();
+                ex = new IOException("Timed out fetching the page");
+            }
+            if(!cancelled) TitleCache.putFailure(url, ex.getMessage());
+            fail(ex);
+        }
+
+        /**
+         * Gives a remembered result to the callback instead of fetching the page
+         * @param cached the remembered result
+         */
+        private void answer(TitleCache.Entry cached) {
+            if(!finish()) return;
+            for(Callback callback : callbacks) {
+                if(cached.isFailure()) callback.failed(new IOException(cached.getResult()));
+                else callback.completed(cached.getResult());
+            }
+        }
+
+        /**
+         * Gives the title to the callbacks, unless the fetch has already finished
+         * @param title the title of the page
+         */
+        private void complete(String title) {
+            if(!finish()) return;
+            completed.incrementAndGet();
+            for(Callback callback : callbacks) {
+                callback.completed(title);
+            }
+        }
+
+        /**
+         * Tells the callbacks the fetch failed, unless the fetch has already finished
+         * @param ex the reason the fetch failed
+         */
+        private void fail(Exception ex) {
+            if(!finish()) return;
+            failed.incrementAndGet();
+            for(Callback callback : callbacks) {
+                callback.failed(ex);
+            }
+        }
+
+        /**
+         * Adds a caller waiting for the same page, unless the fetch has already finished
+         * @param callback the callback to give the result to
+         * @return true if the caller will be given the result, false if it came too late
+         */
+        private synchronized boolean join(Callback callback) {
+            if(finished.get()) return false;
+            callbacks.add(callback);
+            return true;
+        }
+
+        /**
+         * Marks the fetch as finished so no more callers can join it
+         * @return true if the fetch was marked, false if it had already finished
+         */
+        private boolean finish() {
+            synchronized(this) {
+                if(!finished.compareAndSet(false, true)) return false;
+            }
+            release();
+            return true;
+        }
+
+        /**
+         * Forgets the fetch once it has finished, so the page can be fetched again
+         */
+        private void release() {
+            inFlight.remove(key, this);
+            if(counted) active.decrementAndGet();
+        }
+
+        /**
+         * One of the requests making up the fetch, and what was learned from its response
+         */
+        private final class Exchange implements AsyncHTTPClient.Listener {
+            private final Step step;
+            private Exception error;
+            private URL redirect;
+            private boolean refused = false;
+            private boolean isPage = false;
+            private String description;
+            private Charset charset;
+            private TitleExtractor extractor;
+            private int length = 0;
+            private String title;
+
+            /**
+             * Class constructor
+             * @param step which request this is
+             */
+            private Exchange(Step step) {
+                this.step = step;
+            }
+
+            /*
+             * (non-Javadoc)
+             * @see us.rddt.IRCBot.AsyncHTTPClient.Listener#headers(us.rddt.IRCBot.AsyncHTTPClient.Response)
+             */
+            public boolean headers(Response response) {
+                int status = response.getStatus();
+                // Some servers refuse HEAD, so ask for the first byte of the body instead
+                if(step == Step.PROBE && (status == 405 || status == 501 || status == 403)) {
+                    refused = true;
+                    return false;
+                }
+                // Follow redirects
+                String location = response.getHeader("Location");
+                if(location != null && (status == 301 || status == 302 || status == 303 || status == 307 || status == 308)) {
+                    try {
+                        redirect = new URL(response.getURL(), location);
+                    } catch (MalformedURLException ex) {
+                        error = ex;
+                    }
+                    return false;
+                }
+                // Return an error if the response code is over 400
+                if(status >= 400) {
+                    error = new IOException("Server returned response code: " + status);
+                    return false;
+                }
+                // Get the Content-Type property from the HTTP headers so we can parse accordingly
+                String header = response.getHeader("Content-Type");
+                ContentType contentType = new ContentType(header == null ? "application/octet-stream" : header);
+                // If the document isn't HTML, return the Content-Type and Content-Length instead
+                if(!contentType.contentType.equalsIgnoreCase("text/html")) {
+                    description = getPrefix(response) + "Type: " + contentType.contentType + ", length: " + humanReadableByteCount(getResourceLength(response), true);
+                    return false;
+                }
+                isPage = true;
+                // A probe only finds out that the link is a page, which is fetched next
+                if(step != Step.PAGE) return false;
+                charset = getCharset(contentType);
+                description = getPrefix(response);
+                extractor = new TitleExtractor();
+                return true;
+            }
+
+            /*
+             * (non-Javadoc)
+             * @see us.rddt.IRCBot.AsyncHTTPClient.Listener#body(byte[], int, int)
+             */
+            public boolean body(byte[] data, int offset, int count) {
+                int limit = Configuration.getTitleMaxBytes();
+                count = Math.min(count, limit - length);
+                length += count;
+                // Stop reading as soon as the title has been found
+                if(extractor.feed(data, offset, count)) {
+                    title = extractor.getTitle(charset);
+                    return false;
+                }
+                return length < limit;
+            }
+
+            /*
+             * (non-Javadoc)
+             * @see us.rddt.IRCBot.AsyncHTTPClient.Listener#completed(us.rddt.IRCBot.AsyncHTTPClient.Response)
+             */
+            public void completed(Response response) {
+                if(error != null) {
+                    error(error);
+                } else if(refused) {
+                    send(response.getURL(), Step.RANGE_PROBE);
+                } else if(redirect != null) {
+                    if(++redirects > MAX_REDIRECTS) error(new IOException("Too many redirects"));
+                    else begin(redirect);
+                } else if(isPage && step != Step.PAGE) {
+                    // Now download the page itself
+                    send(response.getURL(), Step.PAGE);
+                } else if(!isPage) {
+                    succeed(description);
+                } else {
+                    if(title == null) {
+                        succeed("Title not found within the first " + humanReadableByteCount(Configuration.getTitleMaxBytes(), true) + " of the page, aborting.");
+                    } else {
+                        succeed(description + Colors.BOLD + IRCUtils.escapeHTMLEntities(title.replaceAll("[\\s\\<>]+", " ").trim()));
+                    }
+                }
+            }
+
+            /*
+             * (non-Javadoc)
+             * @see us.rddt.IRCBot.AsyncHTTPClient.Listener#failed(java.lang.Exception)
+             */
+            public void failed(Exception ex) {
+                error(ex);
+            }
+        }
+    }
+
+    /**
+     * Content-Type class definition
+     */
+    private static final class ContentType {
+        // Regex pattern to match the character set from the Content-Type
+        private static final Pattern CHARSET_HEADER = Pattern.compile("charset=([-_a-zA-Z0-9]+)", Pattern.CASE_INSENSITIVE|Pattern.DOTALL);
+
+        // Variables
+        private String charsetName;
+        private String contentType;
+
+        // Constructor for the ContentType class
+        private ContentType(String headerValue) {
+            // Throw an exception should the passed parameter be null
+            if (headerValue == null)
+                throw new IllegalArgumentException("ContentType must be constructed with a not-null headerValue");
+            // Locate the index of the semicolon in the header and use the regex above to match and extract the character set
+            // If a semicolon doesn't exist then the character set was never provided, so set the Content-Type appropriately
+            int n = headerValue.indexOf(";");
+            if (n != -1) {
+                contentType = headerValue.substring(0, n).trim();
+                Matcher matcher = CHARSET_HEADER.matcher(headerValue);
+                if (matcher.find())
+                    charsetName = matcher.group(1);
+            }
+            else
+                contentType = headerValue.trim();
+        }
+    }
+
+    /**
+     * Extracts the character set from the Content-Type header property
+     * @param contentType the Content-Type property to parse
+     * @return the character set
+     */
+    private static Charset getCharset(ContentType contentType) {
+        // Extract the character set from the character set or return null upon failure
+        if (contentType != null && contentType.charsetName != null && Charset.isSupported(contentType.charsetName))
+            return Charset.forName(contentType.charsetName);
+        else
+            return null;
+    }
+
+    /**
+     * Builds the tags marking SSL/TLS and IPv6 connections
+     * @param response the response from the server
+     * @return the tags, each followed by a space
+     */
+    private static String getPrefix(Response response) {
+        StringBuilder built = new StringBuilder();
+        // Check whether the connection was made over IPv6 or IPv4
+        if(response.getAddress() instanceof Inet6Address) {
+            built.append(Colors.BOLD + Colors.GREEN + "[IPv6]" + Colors.NORMAL + " ");
+        }
+        // Check whether the connection is over HTTPS
+        if(response.getURL().getProtocol().equalsIgnoreCase("https")) {
+            built.append(Colors.BOLD + Colors.GREEN + "[SSL/TLS]" + Colors.NORMAL + " ");
+        }
+        return built.toString();
+    }
+
+    /**
+     * Finds the length of a resource from its response. A response to a range request
+     * gives the length of the range in Content-Length and the length of the whole
+     * resource in Content-Range.
+     * @param response the response from the server
+     * @return the length of the resource, or 0 if the server didn't give it
+     */
+    private static long getResourceLength(Response response) {
+        String length = response.getHeader("Content-Length");
+        if(response.getStatus() == 206) {
+            String range = response.getHeader("Content-Range");
+            int slash = (range == null) ? -1 : range.indexOf('/');
+            length = (slash == -1) ? null : range.substring(slash + 1);
+        }
+        if(length == null) return 0;
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException ex) {
+            // The length is "*" when the server doesn't know it
+            return 0;
+        }
+    }
+
+    /**
+     * Guesses from the path of a URL whether it is a page rather than a file. Paths
+     * without an extension, or with the extension of a web page, are taken to be pages.
+     * @param url the URL to check
+     * @return true if the URL looks like a page, false if it looks like a file
+     */
+    private static boolean looksLikePage(URL url) {
+        String path = url.getPath();
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        if(dot == -1) return true;
+        return PAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Converts a data measurement value to a more human-readable format
+     * @param bytes the length to convert into a data measurement
+     * @param si whether to use the SI measurement
+     * @return the formatted human-readable string
+     */
+    private static String humanReadableByteCount(long bytes, boolean si) {
+        // Variable for the unit of measurement used
+        int unit = si ? 1000 : 1024;
+        // If our value is less than a kilobyte than just return the value untouched in bytes
+        if (bytes < unit) return bytes + " B";
+        // Otherwise, properly convert to the appropriate human-readable value and return it
+        int exp = (int) (Math.log(bytes) / Math.log(unit));
+        String pre = (si ? "kMGTPE" : "KMGTPE").charAt(exp-1) + (si ? "" : "i");
+        return String.format("%.1f %sB", bytes / Math.pow(unit, exp), pre);
+    }
+
+    /**
+     * Fetches the title of a page in the background
+     * @param url the URL of the page
+     * @param callback the callback to give the result to
+     * @return the request, which may be shared with other callers waiting for the same page
+     * and can be used to cancel the caller's interest in it
+     */
+    public static Request fetch(URL url, Callback callback) {
+        String key = TitleCache.getKey(url);
+        final Request request = new Request(url, key, callback, Configuration.getTitleFetchDeadline());
+        while(true) {
+            // Answer straight away if the page has been fetched recently
+            TitleCache.Entry cached = TitleCache.get(url);
+            if(cached != null) {
+                request.answer(cached);
+                return request;
+            }
+            // Wait for the page if it's already being fetched
+            Request existing = inFlight.putIfAbsent(key, request);
+            if(existing == null) break;
+            if(existing.join(callback)) {
+                shared.incrementAndGet();
+                return existing;
+            }
+            // It finished as we joined, so try again
+            inFlight.remove(key, existing);
+        }
+        // Refuse the fetch rather than let a flood of links pile up connections
+        if(active.incrementAndGet() > Configuration.getTitleFetchMaxRequests()) {
+            active.decrementAndGet();
+            rejected.incrementAndGet();
+            request.fail(new IOException("Too many pages are being fetched, try again later"));
+            return request;
+        }
+        request.counted = true;
+        request.begin(url);
+        return request;
+    }
+
+    /**
+     * Returns the statistics of the title fetcher
+     * @return the title fetcher's counters in a human-readable format
+     */
+    public static String getStatistics() {
+        return "Title fetcher: " + active.get() + " running, " + completed.get() + " completed, " + failed.get() + " failed (" + timedOut.get() + " timed out, " +
+                rejected.get() + " rejected), " + shared.get() + " fetches saved by sharing";
+    }
+}
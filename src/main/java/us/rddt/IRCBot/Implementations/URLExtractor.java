@@ -0,0 +1,201 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import us.rddt.IRCBot.Enums.URLTypes;
+
+/**
+ * Finds the URLs in a channel message and works out what kind of link each one is
+ * while it goes, so URLGrabber can go straight to the right lookup instead of trying
+ * a regular expression for every site in turn. The URL pattern is compiled once,
+ * and the sites are recognised from the host and path without further matching.
+ * 
+ * @author Ryan Morrison
+ */
+public class URLExtractor {
+    /*
+     * Class variables.
+     */
+    // Regex pattern to match URLs out of user messages
+    private static final Pattern URL_PATTERN = Pattern.compile("\\bhttps?://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]");
+
+    /**
+     * A URL found in a message, along with what kind of link it is
+     */
+    public static final class ExtractedURL {
+        private final URL url;
+        private final URLTypes type;
+        private final String key;
+
+        /**
+         * Class constructor
+         * @param url the URL
+         * @param type the kind of link
+         * @param key the part of the URL needed to look it up, if any
+         */
+        private ExtractedURL(URL url, URLTypes type, String key) {
+            this.url = url;
+            this.type = type;
+            this.key = key;
+        }
+
+        /**
+         * Returns the URL
+         * @return the URL
+         */
+        public URL getURL() {
+            return url;
+        }
+
+        /**
+         * Returns the kind of link
+         * @return the kind of link
+         */
+        public URLTypes getType() {
+            return type;
+        }
+
+        /**
+         * Returns the part of the URL needed to look it up: the ID of a tweet, the
+         * submission URL of a Reddit link or the ID of a YouTube video
+         * @return the part of the URL needed to look it up, or null if there isn't one
+         */
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * Class constructor. Not used, as the extractor only has static methods.
+     */
+    private URLExtractor() {
+    }
+
+    /**
+     * Finds and classifies the URLs in a message
+     * @param message the message to search
+     * @param limit the maximum number of URLs to return
+     * @return the URLs found, in the order they appear
+     */
+    public static List<ExtractedURL> extract(String message, int limit) {
+        // Most messages have no links at all, so don't bother running the pattern on them
+        if(message.indexOf("http") == -1) return Collections.emptyList();
+        List<ExtractedURL> urls = new ArrayList<ExtractedURL>();
+        Matcher matcher = URL_PATTERN.matcher(message);
+        while(urls.size() < limit && matcher.find()) {
+            try {
+                urls.add(classify(new URL(matcher.group())));
+            } catch (MalformedURLException ex) {
+                continue;
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Works out what kind of link a URL is
+     * @param url the URL to classify
+     * @return the classified URL
+     */
+    public static ExtractedURL classify(URL url) {
+        String host = url.getHost().toLowerCase(Locale.ENGLISH);
+        String protocol = url.getProtocol();
+        String address = url.toString();
+        // Everything after the host and port, including the query and fragment
+        int pathStart = address.indexOf('/', address.indexOf("://") + 3);
+        String rest = (pathStart == -1) ? "" : address.substring(pathStart);
+        if(host.equals("twitter.com") || host.equals("www.twitter.com")) {
+            // Older tweet links keep the path in the fragment, as in http://twitter.com/#!/user/status/1
+            String path = rest.startsWith("/#!/") ? rest.substring(3) : rest;
+            String tweetID = getTweetID(path);
+            if(tweetID != null) return new ExtractedURL(url, URLTypes.TWEET, tweetID);
+        } else if(host.equals("reddit.com") || host.equals("www.reddit.com")) {
+            String link = getRedditLink(address, pathStart, rest);
+            if(link != null) return new ExtractedURL(url, URLTypes.REDDIT_LINK, link);
+            if(rest.startsWith("/user/") && rest.length() > 6) return new ExtractedURL(url, URLTypes.REDDIT_USER, null);
+        } else if(protocol.equals("http") && (host.equals("imgur.com") || host.equals("www.imgur.com") || host.equals("i.imgur.com"))) {
+            if(rest.length() > 1) return new ExtractedURL(url, URLTypes.IMGUR, null);
+        } else if(protocol.equals("http") && (host.equals("youtube.com") || host.equals("www.youtube.com"))) {
+            if(rest.startsWith("/watch?v=") && rest.length() > 9) {
+                int end = rest.indexOf('&');
+                return new ExtractedURL(url, URLTypes.YOUTUBE_VIDEO, rest.substring(9, (end == -1) ? rest.length() : end));
+            }
+        }
+        return new ExtractedURL(url, URLTypes.WEB, null);
+    }
+
+    /**
+     * Returns the ID of a tweet from a path like /user/status/1
+     * @param path the path of the URL
+     * @return the ID of the tweet, or null if the path isn't a tweet
+     */
+    private static String getTweetID(String path) {
+        int userEnd = path.indexOf('/', 1);
+        if(userEnd < 2) return null;
+        for(int i = 1; i < userEnd; i++) {
+            char c = path.charAt(i);
+            if(!Character.isLetterOrDigit(c) && c != '_') return null;
+        }
+        int start;
+        if(path.startsWith("/status/", userEnd)) start = userEnd + 8;
+        else if(path.startsWith("/statuses/", userEnd)) start = userEnd + 10;
+        else return null;
+        int end = start;
+        while(end < path.length() && Character.isDigit(path.charAt(end))) end++;
+        return (end == start) ? null : path.substring(start, end);
+    }
+
+    /**
+     * Returns the submission URL of a Reddit link like /r/subreddit/comments/id/title/
+     * @param address the whole URL
+     * @param pathStart where the path starts in the URL
+     * @param rest the URL from the start of the path
+     * @return the URL up to the end of the submission, or null if the URL isn't a submission
+     */
+    private static String getRedditLink(String address, int pathStart, String rest) {
+        if(!rest.startsWith("/r/")) return null;
+        int comments = rest.indexOf("/comments/", 4);
+        if(comments == -1) return null;
+        // There must be an ID and a title after /comments/, each followed by a slash
+        int idStart = comments + 10;
+        int lastSlash = rest.lastIndexOf('/');
+        int idEnd = rest.indexOf('/', idStart + 1);
+        if(idEnd == -1 || idEnd > lastSlash - 2) return null;
+        return address.substring(0, pathStart + lastSlash + 1);
+    }
+}
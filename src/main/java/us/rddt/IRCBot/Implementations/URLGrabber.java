@@ -28,18 +28,9 @@
 
 package us.rddt.IRCBot.Implementations;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.logging.Level;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -55,7 +46,11 @@ import twitter4j.Twitter;
 import twitter4j.TwitterException;
 import twitter4j.TwitterFactory;
 import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.Enums.MessagePriorities;
+import us.rddt.IRCBot.Enums.Upstreams;
 import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Implementations.URLExtractor.ExtractedURL;
+import us.rddt.IRCBot.MessageQueue;
 
 /**
  * Detects and returns information for URLs the bot sees in a channel. For normal
@@ -74,132 +69,32 @@ public class URLGrabber implements Runnable {
      * Class variables.
      */
     private MessageEvent<PircBotX> event = null;
+    private ExtractedURL extracted = null;
     private URL url = null;
 
-    // Regex pattern to match imgur links
-    private static final Pattern IMGUR_LINK = Pattern.compile("http:\\/\\/(www.)?(i.)?imgur\\.com\\/.+");
-    // Regex pattern to match Reddit links
-    private static final Pattern REDDIT_LINK = Pattern.compile("https?:\\/\\/(www.)?reddit\\.com\\/r\\/.+\\/comments\\/.+\\/.+\\/");
-    // Regex pattern to match Reddit users
-    private static final Pattern REDDIT_USER = Pattern.compile("https?:\\/\\/(www.)?reddit\\.com\\/user\\/.+");
-    // Regex pattern to match Twitter tweets
-    private static final Pattern TWITTER_TWEET = Pattern.compile("https?:\\/\\/(www\\.)?twitter\\.com\\/(?:#!\\/)?(\\w+)\\/status(es)?\\/(\\d+)");
-    // Regex pattern to match YouTube videos
-    private static final Pattern YOUTUBE_VIDEO = Pattern.compile("http:\\/\\/(www.)?youtube\\.com\\/watch\\?v=.+");
-
-    /**
-     * Content-Type class definition
-     */
-    private static final class ContentType {
-        // Regex pattern to match the character set from the Content-Type
-        private static final Pattern CHARSET_HEADER = Pattern.compile("charset=([-_a-zA-Z0-9]+)", Pattern.CASE_INSENSITIVE|Pattern.DOTALL);
-
-        // Variables
-        private String charsetName;
-        private String contentType;
-
-        // Constructor for the ContentType class
-        private ContentType(String headerValue) {
-            // Throw an exception should the passed parameter be null
-            if (headerValue == null)
-                throw new IllegalArgumentException("ContentType must be constructed with a not-null headerValue");
-            // Locate the index of the semicolon in the header and use the regex above to match and extract the character set
-            // If a semicolon doesn't exist then the character set was never provided, so set the Content-Type appropriately
-            int n = headerValue.indexOf(";");
-            if (n != -1) {
-                contentType = headerValue.substring(0, n);
-                Matcher matcher = CHARSET_HEADER.matcher(headerValue);
-                if (matcher.find())
-                    charsetName = matcher.group(1);
-            }
-            else
-                contentType = headerValue;
-        }
-    }
-
-    /**
-     * Extracts the character set from the Content-Type header property
-     * @param contentType the Content-Type property to parse
-     * @return the character set
-     */
-    private static Charset getCharset(ContentType contentType) {
-        // Extract the character set from the character set or return null upon failure
-        if (contentType != null && contentType.charsetName != null && Charset.isSupported(contentType.charsetName))
-            return Charset.forName(contentType.charsetName);
-        else
-            return null;
-    }
-    /**
-     * Extracts the Content-Length property from the HTTP response
-     * @param conn the open HTTP connection to read the headers from
-     * @return the length of the data stream
-     */
-    private static int getContentLengthHeader(HttpURLConnection conn) {
-        // Variables
-        int i = 0;
-        boolean moreHeaders = true;
-        // Loop through the headers until we find the Content-Length property
-        // If we find it, break out, otherwise continue reading
-        do {
-            String headerName = conn.getHeaderFieldKey(i);
-            String headerValue = conn.getHeaderField(i);
-            if (headerName != null && headerName.equals("Content-Length"))
-                return Integer.parseInt(headerValue);
-            i++;
-            moreHeaders = headerName != null || headerValue != null;
-        }
-        while (moreHeaders);
-        // If we reach this point we couldn't find the headers we need, so return 0
-        return 0;
-    }
-
     /**
-     * Extracts the Content-Type property from the HTTP response
-     * @param conn the open HTTP connection to read the headers from
-     * @return the content type header value(s)
+     * Class constructor
+     * @param event the MessageEvent that triggered this class
+     * @param extracted the URL to look up, as found by URLExtractor
      */
-    private static ContentType getContentTypeHeader(HttpURLConnection conn) {
-        // Variables
-        int i = 0;
-        boolean moreHeaders = true;
-        // Loop through the headers until we find the Content-Type property
-        // If we find it, break out, otherwise continue reading
-        do {
-            String headerName = conn.getHeaderFieldKey(i);
-            String headerValue = conn.getHeaderField(i);
-            if (headerName != null && headerName.equals("Content-Type"))
-                return new ContentType(headerValue);
-            i++;
-            moreHeaders = headerName != null || headerValue != null;
-        }
-        while (moreHeaders);
-        // If we reach this point we couldn't find the headers we need, so return null
-        return null;
+    public URLGrabber(MessageEvent<PircBotX> event, ExtractedURL extracted) {
+        this.event = event;
+        this.extracted = extracted;
+        this.url = extracted.getURL();
     }
 
     /**
-     * Converts a data measurement value to a more human-readable format
-     * @param bytes the length to convert into a data measurement
-     * @param si whether to use the SI measurement
-     * @return the formatted human-readable string
+     * Returns the outside service a URL will be looked up against
+     * @param url the URL to be looked up
+     * @return the service the URL will be looked up against
      */
-    private static String humanReadableByteCount(long bytes, boolean si) {
-        // Variable for the unit of measurement used
-        int unit = si ? 1000 : 1024;
-        // If our value is less than a kilobyte than just return the value untouched in bytes
-        if (bytes < unit) return bytes + " B";
-        // Otherwise, properly convert to the appropriate human-readable value and return it
-        int exp = (int) (Math.log(bytes) / Math.log(unit));
-        String pre = (si ? "kMGTPE" : "KMGTPE").charAt(exp-1) + (si ? "" : "i");
-        return String.format("%.1f %sB", bytes / Math.pow(unit, exp), pre);
-    }
-
-    /**
-     * Class constructor
-     */
-    public URLGrabber(MessageEvent<PircBotX> event, URL url) {
-        this.event = event;
-        this.url = url;
+    public static Upstreams getUpstream(URL url) {
+        String host = url.getHost().toLowerCase();
+        if(host.endsWith("twitter.com")) return Upstreams.TWITTER;
+        // imgur links are checked against the reddit API
+        if(host.endsWith("reddit.com") || host.endsWith("imgur.com")) return Upstreams.REDDIT;
+        if(host.endsWith("youtube.com")) return Upstreams.YOUTUBE;
+        return Upstreams.WEB;
     }
 
     /**
@@ -224,7 +119,7 @@ public class URLGrabber implements Runnable {
                 if(bestSubmission.isNSFL()) {
                     formattedString += (" " + Colors.BOLD + Colors.RED + "[NSFL]");
                 }
-                event.getBot().sendMessage(event.getChannel(), formattedString);
+                MessageQueue.sendMessage(event.getChannel(), formattedString, MessagePriorities.URL);
                 return true;
             } else {
                 return false;
@@ -246,80 +141,6 @@ public class URLGrabber implements Runnable {
         return "[" + site + " by '" + event.getUser().getNick() + "'] An error occurred while retrieving this URL. (" + IRCUtils.trimString(message, 50) + ")";
     }
 
-    /**
-     * Gets the page title from a provided URL
-     * @param url the URL of the page to extract the title from
-     * @return the page title
-     * @throws Exception if an error occurs downloading the page
-     */
-    private String getPageTitle(URL url) throws Exception {
-        // Connect to the server
-        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-        // Set a proper user agent, some sites return HTTP 409 without it
-        conn.setRequestProperty("User-Agent", Configuration.getUserAgent());
-        // Follow 301 redirects
-        if(conn.getResponseCode() == 301) {
-            return getPageTitle(new URL(conn.getHeaderField("Location")));
-        }
-        // Return an error if the response code is over 400
-        if(conn.getResponseCode() >= 400) {
-            throw new IOException("Server returned response code: " + conn.getResponseCode());
-        }
-        // No need to check validity of the URL - it's already been proven valid at this point
-        // Get the Content-Type property from the HTTP headers so we can parse accordingly
-        ContentType contentType = getContentTypeHeader(conn);
-        
-        // Prefix for marking SSL/TLS and IPv6 connections
-        StringBuilder built = new StringBuilder();
-        
-        // Check whether the connection is IPv6 or IPv4
-        String ip = InetAddress.getByName(url.getHost()).getHostAddress();
-        if(ip.contains(":") && !ip.contains(".")) {
-            built.append(Colors.BOLD + Colors.GREEN + "[IPv6]" + Colors.NORMAL + " ");
-        }
-        // Check whether the connection is over HTTPS
-        if (conn instanceof HttpsURLConnection) {
-            built.append(Colors.BOLD + Colors.GREEN + "[SSL/TLS]" + Colors.NORMAL + " ");
-        }
-        
-        // If the document isn't HTML, return the Content-Type and Content-Length instead
-        if(!contentType.contentType.equals("text/html")) {
-            return built.append("Type: " + contentType.contentType + ", length: " + humanReadableByteCount(getContentLengthHeader(conn), true)).toString();
-        }
-        else {
-            // Get the character set or use the default accordingly
-            Charset charset = getCharset(contentType);
-            if(charset == null) charset = Charset.defaultCharset();
-            // Create and prepare our streams for reading from the web server
-            InputStream in = conn.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset));
-            // More variables
-            int n = 0, totalRead = 0;
-            char[] buf = new char[1024];
-            StringBuilder content = new StringBuilder();
-
-            // Read the page from the web server into the buffer up to 8192 bytes and create a string from it
-            // The first 8192 bytes should be enough to fetch the title, while saving us time and bandwidth
-            while(totalRead < 8192 && (n = reader.read(buf, 0, buf.length)) != -1) {
-                content.append(buf, 0, n);
-                totalRead += n;
-            }
-            // Close the BufferedReader
-            reader.close();
-            // Disconnect from the web server
-            conn.disconnect();
-
-            // Regex giving you trouble? Well, it's only 8192 bytes, so let's just do a straight-up string search
-            int titleIndex = content.indexOf("<title>");
-            int titleEndIndex = content.indexOf("</title>");
-            if (titleIndex == -1 || titleEndIndex == -1 || titleIndex >= content.length() || titleEndIndex >= content.length())
-            {
-                return "Title not found or not within first 8192 bytes of page, aborting.";
-            }
-            return built.append(Colors.BOLD + IRCUtils.escapeHTMLEntities(content.substring(titleIndex + 7, titleEndIndex).replaceAll("[\\s\\<>]+", " ").trim())).toString();
-        }
-    }
-
     /**
      * Prints the title of a Reddit submissions or information about a user depending on the URL provided
      * @param redditURL the reddit URL to extract the data from
@@ -338,7 +159,7 @@ public class URLGrabber implements Runnable {
                 if(user.isGold()) {
                     formattedString += " [reddit gold]";
                 }
-                event.getBot().sendMessage(event.getChannel(), formattedString);
+                MessageQueue.sendMessage(event.getChannel(), formattedString, MessagePriorities.URL);
                 return;
             }
             else {
@@ -351,14 +172,14 @@ public class URLGrabber implements Runnable {
                 if(link.isNSFL()) {
                     formattedString += (" " + Colors.BOLD + Colors.RED + "[NSFL]");
                 }
-                event.getBot().sendMessage(event.getChannel(), formattedString);
+                MessageQueue.sendMessage(event.getChannel(), formattedString, MessagePriorities.URL);
                 return;
             }
         } catch (MalformedURLException ex) {
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
             return;
         } catch (Exception ex) {
-            event.getBot().sendMessage(event.getChannel(), formatError("Reddit", ex.getMessage()));
+            MessageQueue.sendMessage(event.getChannel(), formatError("Reddit", ex.getMessage()), MessagePriorities.URL);
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
             return;
         }
@@ -373,31 +194,31 @@ public class URLGrabber implements Runnable {
             // Get the Tweet and send it back to the channel
             Twitter twitter = new TwitterFactory().getInstance();
             Status status = twitter.showStatus(tweetID);
-            event.getBot().sendMessage(event.getChannel(), "[Tweet by '" + event.getUser().getNick() + "'] " + Colors.BOLD + "@" + status.getUser().getScreenName() + Colors.NORMAL + ": " + status.getText());
+            MessageQueue.sendMessage(event.getChannel(), "[Tweet by '" + event.getUser().getNick() + "'] " + Colors.BOLD + "@" + status.getUser().getScreenName() + Colors.NORMAL + ": " + status.getText(), MessagePriorities.URL);
         } catch (TwitterException te) {
-            event.getBot().sendMessage(event.getChannel(), formatError("Twitter", te.getMessage()));
+            MessageQueue.sendMessage(event.getChannel(), formatError("Twitter", te.getMessage()), MessagePriorities.URL);
             Configuration.getLogger().write(Level.WARNING, te.getStackTrace().toString());
         }
     }
 
     /**
      * Prints the title and duration of a YouTube video to a specified channel
-     * @param youtubeURL the URL to process
+     * @param videoID the ID of the video to process
      */
-    private void returnYouTubeVideo(URL youtubeURL) {
+    private void returnYouTubeVideo(String videoID) {
         URL appendURL = null;
 
         // Construct the URL to read the JSON data from
         try {
-            appendURL = new URL("http://gdata.youtube.com/feeds/api/videos?q=" + url.toString().split("=")[1] + "&v=2&alt=jsonc");
+            appendURL = new URL("http://gdata.youtube.com/feeds/api/videos?q=" + videoID + "&v=2&alt=jsonc");
             YouTubeLink link = YouTubeLink.getLink(appendURL);
-            event.getBot().sendMessage(event.getChannel(), "[YouTube by '" + event.getUser().getNick() + "'] " + Colors.BOLD + link.getTitle() + Colors.NORMAL + " (" + link.getReadableDuration() + ")");
+            MessageQueue.sendMessage(event.getChannel(), "[YouTube by '" + event.getUser().getNick() + "'] " + Colors.BOLD + link.getTitle() + Colors.NORMAL + " (" + link.getReadableDuration() + ")", MessagePriorities.URL);
             return;
         } catch (MalformedURLException ex) {
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
             return;
         } catch (Exception ex) {
-            event.getBot().sendMessage(event.getChannel(), formatError("YouTube", ex.getMessage()));
+            MessageQueue.sendMessage(event.getChannel(), formatError("YouTube", ex.getMessage()), MessagePriorities.URL);
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
             return;
         }
@@ -409,43 +230,41 @@ public class URLGrabber implements Runnable {
      * @see java.lang.Runnable#run()
      */
     public void run() {
-        // Run the URL through each regex pattern and parse accordingly
-        Matcher urlMatcher = TWITTER_TWEET.matcher(url.toString());
-        if(urlMatcher.find()) {
-            returnTweet(Long.parseLong(url.toString().substring(url.toString().lastIndexOf("/")).replaceAll("/", "")));
+        // The URL was classified when it was extracted from the message, so go straight to the right lookup
+        switch(extracted.getType()) {
+        case TWEET:
+            returnTweet(Long.parseLong(extracted.getKey()));
             return;
-        }
-        urlMatcher = REDDIT_LINK.matcher(url.toString());
-        if(urlMatcher.find()) {
+        case REDDIT_LINK:
             try {
-                returnReddit(new URL(urlMatcher.group()), false);
+                returnReddit(new URL(extracted.getKey()), false);
             } catch (MalformedURLException ex) {
                 return;
             }
             return;
-        }
-        urlMatcher = REDDIT_USER.matcher(url.toString());
-        if(urlMatcher.find()) {
+        case REDDIT_USER:
             returnReddit(url, true);
             return;
-        }
-        urlMatcher = IMGUR_LINK.matcher(url.toString());
-        if(urlMatcher.find()) {
+        case IMGUR:
             if(checkImgurReddit(url)) return;
-        }
-        urlMatcher = YOUTUBE_VIDEO.matcher(url.toString());
-        if(urlMatcher.find()) {
-            returnYouTubeVideo(url);
-            return;
-        }
-        // If none of the regex patterns matched, then get the page title/length
-        try {
-            event.getBot().sendMessage(event.getChannel(), ("[URL by '" + event.getUser().getNick() + "'] " + getPageTitle(url)));
-        } catch (Exception ex) {
-            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
-            event.getBot().sendMessage(event.getChannel(), formatError("URL", ex.getMessage()));
+            break;
+        case YOUTUBE_VIDEO:
+            returnYouTubeVideo(extracted.getKey());
             return;
+        default:
+            break;
         }
+        // If the URL isn't from a site we know, then get the page title/length in the background
+        TitleFetcher.fetch(url, new TitleFetcher.Callback() {
+            public void completed(String title) {
+                MessageQueue.sendMessage(event.getChannel(), ("[URL by '" + event.getUser().getNick() + "'] " + title), MessagePriorities.URL);
+            }
+
+            public void failed(Exception ex) {
+                Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                MessageQueue.sendMessage(event.getChannel(), formatError("URL", ex.getMessage()), MessagePriorities.URL);
+            }
+        });
     }
 
     /*
@@ -0,0 +1,121 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+/**
+ * Works out everything onMessage needs to know about a channel message in a single
+ * pass over its characters, without allocating: whether it is a shout, how long it
+ * is once leading and trailing whitespace is trimmed, and whether it starts with a
+ * command prefix. The results are packed into a single int so that nothing has to
+ * be created for every line the bot sees.
+ * 
+ * @author Ryan Morrison
+ */
+public class MessageClassifier {
+    /*
+     * Class variables.
+     */
+    // Set if the message has at least one letter and no lower case letters
+    private static final int SHOUT = 1 << 30;
+    // Set if the message starts with ! or .
+    private static final int COMMAND = 1 << 29;
+    // The bits holding the trimmed length of the message
+    private static final int LENGTH_MASK = COMMAND - 1;
+
+    /**
+     * Class constructor. Not used, as the classifier only has static methods.
+     */
+    private MessageClassifier() {
+    }
+
+    /**
+     * Classifies a message
+     * @param message the message to classify
+     * @return the packed classification, to be read with isShout, isCommand and getTrimmedLength
+     */
+    public static int classify(CharSequence message) {
+        int length = message.length();
+        int flags = 0;
+        if(length > 0) {
+            char first = message.charAt(0);
+            if(first == '!' || first == '.') flags |= COMMAND;
+        }
+        boolean includesLetter = false;
+        boolean includesLowerCase = false;
+        int start = -1;
+        int end = -1;
+        for(int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            // Whitespace as the \s regular expression class defines it
+            if(c == ' ' || (c >= '\t' && c <= '\r')) continue;
+            if(start == -1) start = i;
+            end = i;
+            if(includesLowerCase) continue;
+            if(c < 128) {
+                // Most chat is plain ASCII, which can be checked without the Character lookups
+                if(c >= 'a' && c <= 'z') includesLowerCase = true;
+                else if(c >= 'A' && c <= 'Z') includesLetter = true;
+            } else {
+                if(Character.isLowerCase(c)) includesLowerCase = true;
+                else if(Character.isLetter(c)) includesLetter = true;
+            }
+        }
+        // An all numeric or all punctuation message doesn't count as a shout
+        if(includesLetter && !includesLowerCase) flags |= SHOUT;
+        int trimmedLength = (start == -1) ? 0 : end - start + 1;
+        return flags | Math.min(trimmedLength, LENGTH_MASK);
+    }
+
+    /**
+     * Checks to see if a classified message is a shout
+     * @param classification the result of classify
+     * @return true if the message is a shout, false if it is not
+     */
+    public static boolean isShout(int classification) {
+        return (classification & SHOUT) != 0;
+    }
+
+    /**
+     * Checks to see if a classified message starts with a command prefix
+     * @param classification the result of classify
+     * @return true if the message starts with ! or ., false if it does not
+     */
+    public static boolean isCommand(int classification) {
+        return (classification & COMMAND) != 0;
+    }
+
+    /**
+     * Returns the length of a classified message once surrounding whitespace is trimmed
+     * @param classification the result of classify
+     * @return the trimmed length of the message
+     */
+    public static int getTrimmedLength(int classification) {
+        return classification & LENGTH_MASK;
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.pircbotx.Channel;
+import org.pircbotx.PircBotX;
+import org.pircbotx.User;
+import org.pircbotx.hooks.events.MessageEvent;
+
+import us.rddt.IRCBot.Enums.MessagePriorities;
+
+/**
+ * Schedules everything the bot sends to the server. Lines are queued into priority
+ * lanes and sent by a single thread at a rate governed by a token bucket, so that
+ * bursts of URL titles, shouts and subreddit announcements don't get the bot
+ * throttled or disconnected for flooding. Mode changes and kicks are sent ahead
+ * of anything else waiting in the queue.
+ * 
+ * @author Ryan Morrison
+ */
+public class MessageQueue {
+    /*
+     * Class variables.
+     */
+    private static PircBotX bot;
+    private static Thread sender;
+    private static final PriorityBlockingQueue<OutboundLine> queue = new PriorityBlockingQueue<OutboundLine>();
+    private static final AtomicLong sequence = new AtomicLong();
+    private static final Map<MessagePriorities,LaneStatistics> lanes = new EnumMap<MessagePriorities,LaneStatistics>(MessagePriorities.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_TARGETS_LENGTH = 200;
+
+    // Token bucket state, only touched by the sending thread
+    private static double tokens;
+    private static long lastRefill;
+
+    static {
+        for(MessagePriorities priority : MessagePriorities.values()) {
+            lanes.put(priority, new LaneStatistics());
+        }
+    }
+
+    /**
+     * A single line waiting to be sent to the server
+     */
+    private static final class OutboundLine implements Comparable<OutboundLine> {
+        private final String line;
+        private final MessagePriorities priority;
+        private final long sequence;
+        private final long queuedAt = System.nanoTime();
+
+        /**
+         * Class constructor
+         * @param line the raw line to send
+         * @param priority the lane to send the line in
+         * @param sequence the order the line was queued in
+         */
+        private OutboundLine(String line, MessagePriorities priority, long sequence) {
+            this.line = line;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Orders lines by their lane, then by the order they were queued in
+         * (non-Javadoc)
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        public int compareTo(OutboundLine other) {
+            if(priority != other.priority) return priority.compareTo(other.priority);
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Counters kept for each lane of the queue
+     */
+    private static final class LaneStatistics {
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong totalLag = new AtomicLong();
+        private final AtomicLong maxLag = new AtomicLong();
+
+        /**
+         * Records a line which has been sent
+         * @param lag the time in nanoseconds the line spent queued
+         */
+        private void recordSent(long lag) {
+            sent.incrementAndGet();
+            totalLag.addAndGet(lag);
+            long currentMax;
+            while(lag > (currentMax = maxLag.get())) {
+                if(maxLag.compareAndSet(currentMax, lag)) break;
+            }
+        }
+
+        /**
+         * Returns the counters in a human-readable format
+         * @return the counters in a human-readable format
+         */
+        public String toString() {
+            long count = sent.get();
+            return queued.get() + " queued, " + count + " sent, " + dropped.get() + " dropped, " +
+                    String.format("avg lag %.1f ms, max %.1f ms",
+                            count == 0 ? 0.0 : totalLag.get() / count / 1000000.0,
+                            maxLag.get() / 1000000.0);
+        }
+    }
+
+    /**
+     * Starts the thread which sends queued lines to the server
+     * @param bot the IRC bot to send lines through
+     */
+    public static synchronized void start(PircBotX bot) {
+        MessageQueue.bot = bot;
+        if(sender != null) return;
+        tokens = Configuration.getOutboundBurst();
+        lastRefill = System.nanoTime();
+        sender = new Thread(new Runnable() {
+            public void run() {
+                while(true) {
+                    try {
+                        OutboundLine line = queue.take();
+                        waitForToken();
+                        // A more urgent line may have been queued while we were waiting
+                        OutboundLine head = queue.peek();
+                        if(head != null && head.compareTo(line) < 0) {
+                            queue.offer(line);
+                            line = queue.poll();
+                        }
+                        LaneStatistics lane = lanes.get(line.priority);
+                        lane.queued.decrementAndGet();
+                        MessageQueue.bot.sendRawLineNow(line.line);
+                        lane.recordSent(System.nanoTime() - line.queuedAt);
+                    } catch (InterruptedException ex) {
+                        return;
+                    } catch (Exception ex) {
+                        Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                    }
+                }
+            }
+        }, "MessageQueue");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Blocks until the token bucket allows another line to be sent
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private static void waitForToken() throws InterruptedException {
+        long interval = TimeUnit.MILLISECONDS.toNanos(Configuration.getOutboundInterval());
+        while(true) {
+            long now = System.nanoTime();
+            tokens = Math.min(Configuration.getOutboundBurst(), tokens + (now - lastRefill) / (double)interval);
+            lastRefill = now;
+            if(tokens >= 1) {
+                tokens -= 1;
+                return;
+            }
+            Thread.sleep(Math.max(1, (long)((1 - tokens) * Configuration.getOutboundInterval())));
+        }
+    }
+
+    /**
+     * Waits for the queue to finish sending any lines still waiting in it
+     * @param timeout the maximum time to wait in milliseconds
+     */
+    public static void awaitEmpty(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while(getQueuedCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of lines waiting to be sent across all lanes
+     * @return the number of lines waiting to be sent
+     */
+    private static int getQueuedCount() {
+        int queued = 0;
+        for(LaneStatistics lane : lanes.values()) {
+            queued += lane.queued.get();
+        }
+        return queued;
+    }
+
+    /**
+     * Queues a raw line to be sent to the server
+     * @param line the raw line to send
+     * @param priority the lane to send the line in
+     */
+    public static void sendRawLine(String line, MessagePriorities priority) {
+        LaneStatistics lane = lanes.get(priority);
+        if(lane.queued.get() >= Configuration.getOutboundQueueSize()) {
+            lane.dropped.incrementAndGet();
+            Configuration.getLogger().write(Level.WARNING, "Outbound " + priority.name().toLowerCase() + " queue is full, dropping: " + line);
+            return;
+        }
+        lane.queued.incrementAndGet();
+        queue.offer(new OutboundLine(line, priority, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Queues a message to a channel or user, splitting it if it is too long for one line
+     * @param target the channel or nick to send the message to
+     * @param message the message to send
+     * @param priority the lane to send the message in
+     */
+    public static void sendMessage(String target, String message, MessagePriorities priority) {
+        sendSplit("PRIVMSG " + target + " :", String.valueOf(message), priority);
+    }
+
+    /**
+     * Queues a message to a channel
+     * @param channel the channel to send the message to
+     * @param message the message to send
+     * @param priority the lane to send the message in
+     */
+    public static void sendMessage(Channel channel, String message, MessagePriorities priority) {
+        sendMessage(channel.getName(), message, priority);
+    }
+
+    /**
+     * Queues the same message to several channels, sending it to as many channels
+     * per line as the server allows
+     * @param channels the channels to send the message to
+     * @param message the message to send
+     * @param priority the lane to send the message in
+     */
+    public static void sendMessage(Collection<Channel> channels, String message, MessagePriorities priority) {
+        int maxTargets = ServerSupport.getMaxMessageTargets();
+        StringBuilder targets = new StringBuilder();
+        int count = 0;
+        for(Channel channel : channels) {
+            // Start a new line when the server's limit is reached or the targets would crowd out the message
+            if(count > 0 && (count == maxTargets || targets.length() + channel.getName().length() >= MAX_TARGETS_LENGTH)) {
+                sendMessage(targets.toString(), message, priority);
+                targets.setLength(0);
+                count = 0;
+            }
+            if(count > 0) targets.append(',');
+            targets.append(channel.getName());
+            count++;
+        }
+        if(count > 0) sendMessage(targets.toString(), message, priority);
+    }
+
+    /**
+     * Queues a private message to a user
+     * @param user the user to send the message to
+     * @param message the message to send
+     * @param priority the lane to send the message in
+     */
+    public static void sendMessage(User user, String message, MessagePriorities priority) {
+        sendMessage(user.getNick(), message, priority);
+    }
+
+    /**
+     * Queues a notice to a channel or user, splitting it if it is too long for one line
+     * @param target the channel or nick to send the notice to
+     * @param notice the notice to send
+     * @param priority the lane to send the notice in
+     */
+    public static void sendNotice(String target, String notice, MessagePriorities priority) {
+        sendSplit("NOTICE " + target + " :", String.valueOf(notice), priority);
+    }
+
+    /**
+     * Queues a response to a user's command in the channel it was sent to
+     * @param event the MessageEvent to respond to
+     * @param message the response to send
+     */
+    public static void respond(MessageEvent<PircBotX> event, String message) {
+        sendMessage(event.getChannel(), event.getUser().getNick() + ": " + message, MessagePriorities.COMMAND);
+    }
+
+    /**
+     * Queues a kick of a user from a channel
+     * @param channel the channel to kick the user from
+     * @param user the user to kick
+     * @param reason the reason for the kick
+     */
+    public static void kick(Channel channel, User user, String reason) {
+        sendRawLine("KICK " + channel.getName() + " " + user.getNick() + " :" + reason, MessagePriorities.MODE);
+    }
+
+    /**
+     * Queues a mode change on a channel
+     * @param channel the channel to change the mode of
+     * @param mode the mode change and its parameters, such as +o nick
+     */
+    public static void setMode(Channel channel, String mode) {
+        sendRawLine("MODE " + channel.getName() + " " + mode, MessagePriorities.MODE);
+    }
+
+    /**
+     * Queues a change to a channel's topic
+     * @param channel the channel to change the topic of
+     * @param topic the new topic
+     */
+    public static void setTopic(Channel channel, String topic) {
+        sendRawLine("TOPIC " + channel.getName() + " :" + topic, MessagePriorities.COMMAND);
+    }
+
+    /**
+     * Splits a message into as many lines as needed to fit within IRC's line length
+     * limit, accounting for the prefix the server adds when relaying it
+     * @param prefix the command and target of the message, such as PRIVMSG #channel :
+     * @param message the message to send
+     * @param priority the lane to send the message in
+     */
+    private static void sendSplit(String prefix, String message, MessagePriorities priority) {
+        for(String part : splitMessage(message, getMaxMessageBytes(prefix))) {
+            sendRawLine(prefix + part, priority);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of a message that fit on one line after a prefix
+     * @param prefix the command and target of the message
+     * @return the number of bytes available for the message
+     */
+    private static int getMaxMessageBytes(String prefix) {
+        // The server relays our lines prefixed with :nick!login@host, allow for the longest host
+        int hostmaskLength = 1 + bot.getNick().length() + 1 + bot.getLogin().length() + 1 + 63 + 1;
+        return Math.max(1, 510 - hostmaskLength - prefix.getBytes(UTF8).length);
+    }
+
+    /**
+     * Splits a message into parts no longer than the provided number of bytes
+     * @param message the message to split
+     * @param maxBytes the maximum length of each part in bytes
+     * @return the parts of the message
+     */
+    static List<String> splitMessage(String message, int maxBytes) {
+        List<String> parts = new ArrayList<String>();
+        int start = 0, bytes = 0;
+        for(int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            int width;
+            if(c < 0x80) width = 1;
+            else if(c < 0x800) width = 2;
+            else if(Character.isHighSurrogate(c)) width = 4;
+            else if(Character.isLowSurrogate(c)) width = 0;
+            else width = 3;
+            // Never break a surrogate pair apart
+            if(bytes + width > maxBytes && width > 0) {
+                parts.add(message.substring(start, i));
+                start = i;
+                bytes = 0;
+            }
+            bytes += width;
+        }
+        parts.add(message.substring(start));
+        return parts;
+    }
+
+    /**
+     * Returns the statistics for each lane of the queue
+     * @return the statistics for each lane, one lane per line
+     */
+    public static String[] getStatistics() {
+        String[] lines = new String[lanes.size()];
+        int i = 0;
+        for(Map.Entry<MessagePriorities,LaneStatistics> entry : lanes.entrySet()) {
+            lines[i++] = "Outbound " + entry.getKey().name().toLowerCase() + ": " + entry.getValue();
+        }
+        return lines;
+    }
+}
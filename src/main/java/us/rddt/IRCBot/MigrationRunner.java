@@ -0,0 +1,278 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Brings the database schema up to date on startup. Each migration is applied in
+ * order and the version of the last one applied is recorded in the SchemaVersion
+ * table, so each migration only ever runs once against a database. A migration and
+ * the recording of its version are committed together, so a failed migration is
+ * rolled back and tried again on the next startup. MySQL commits on its own around
+ * every schema change, so there a failed migration may be partly applied, which is
+ * why each migration checks for what already exists before changing it.
+ * 
+ * @author Ryan Morrison
+ */
+public class MigrationRunner {
+    /*
+     * Class variables.
+     */
+    private static final List<Migration> migrations = new ArrayList<Migration>();
+
+    /**
+     * A single change to the database schema
+     */
+    private static abstract class Migration {
+        private final int version;
+        private final String description;
+
+        /**
+         * Class constructor
+         * @param version the schema version this migration brings the database to
+         * @param description a short description of the migration
+         */
+        private Migration(int version, String description) {
+            this.version = version;
+            this.description = description;
+        }
+
+        /**
+         * Applies the migration
+         * @param database the database to apply the migration to
+         * @throws SQLException if the migration fails
+         */
+        protected abstract void apply(Database database) throws SQLException;
+    }
+
+    static {
+        migrations.add(new Migration(1, "Create tables") {
+            protected void apply(Database database) throws SQLException {
+                String id = isMySQL() ? "ID INT PRIMARY KEY AUTO_INCREMENT" : "ID INTEGER PRIMARY KEY AUTOINCREMENT";
+                database.executeUpdate("CREATE TABLE IF NOT EXISTS Quotes(" + id + ", Nick VARCHAR(255) NOT NULL, Date DATETIME NOT NULL, Channel VARCHAR(32) NOT NULL, Quote VARCHAR(255) NOT NULL)");
+                database.executeUpdate("CREATE TABLE IF NOT EXISTS Seen(" + id + ", Nick VARCHAR(255) NOT NULL, Date DATETIME NOT NULL, Channel VARCHAR(32) NOT NULL)");
+                database.executeUpdate("CREATE TABLE IF NOT EXISTS GameStatus(" + id + ", Nick VARCHAR(255) NOT NULL, Date DATETIME NOT NULL, Game VARCHAR(255) NOT NULL)");
+            }
+        });
+        migrations.add(new Migration(2, "Remove duplicate rows and add unique keys for upserts") {
+            protected void apply(Database database) throws SQLException {
+                // The derived table is needed for MySQL, which won't delete from a table it is also selecting from
+                database.executeUpdate("DELETE FROM Seen WHERE ID NOT IN (SELECT ID FROM (SELECT MAX(ID) AS ID FROM Seen GROUP BY Nick, Channel) AS Latest)");
+                database.executeUpdate("DELETE FROM GameStatus WHERE ID NOT IN (SELECT ID FROM (SELECT MAX(ID) AS ID FROM GameStatus GROUP BY Nick) AS Latest)");
+                createIndex(database, "Seen", "SeenNickChannel", "Nick, Channel", true);
+                createIndex(database, "GameStatus", "GameStatusNick", "Nick", true);
+            }
+        });
+        migrations.add(new Migration(3, "Index quotes by channel, quote hash and nick") {
+            protected void apply(Database database) throws SQLException {
+                if(!columnExists(database, "Quotes", "QuoteHash")) {
+                    database.executeUpdate("ALTER TABLE Quotes ADD COLUMN QuoteHash BIGINT");
+                }
+                // Hash the existing quotes a chunk at a time
+                while(true) {
+                    List<Object[]> rows = new ArrayList<Object[]>();
+                    ResultSet resultSet = database.executeQuery("SELECT ID, Quote FROM Quotes WHERE QuoteHash IS NULL LIMIT 1000");
+                    while(resultSet.next()) {
+                        rows.add(new Object[] { IRCUtils.hashQuote(resultSet.getString("Quote")), resultSet.getInt("ID") });
+                    }
+                    resultSet.close();
+                    if(rows.isEmpty()) break;
+                    database.executeBatch("UPDATE Quotes SET QuoteHash = ? WHERE ID = ?", rows);
+                }
+                createIndex(database, "Quotes", "QuotesChannelHash", "Channel, QuoteHash", false);
+                createIndex(database, "Quotes", "QuotesChannelNick", "Channel, Nick", false);
+                // Seen lookups by (Nick, Channel) are covered by the unique key added in version 2
+            }
+        });
+        migrations.add(new Migration(4, "Number quotes within each channel") {
+            protected void apply(Database database) throws SQLException {
+                if(!columnExists(database, "Quotes", "Ordinal")) {
+                    database.executeUpdate("ALTER TABLE Quotes ADD COLUMN Ordinal INT");
+                }
+                // Carry on from any numbers already given out, in case an earlier attempt was interrupted
+                Map<String,Integer> nextOrdinals = new HashMap<String,Integer>();
+                ResultSet resultSet = database.executeQuery("SELECT Channel, MAX(Ordinal) FROM Quotes WHERE Ordinal IS NOT NULL GROUP BY Channel");
+                while(resultSet.next()) {
+                    nextOrdinals.put(resultSet.getString(1), resultSet.getInt(2) + 1);
+                }
+                resultSet.close();
+                // Number the existing quotes in the order they were added, a chunk at a time
+                while(true) {
+                    List<Object[]> rows = new ArrayList<Object[]>();
+                    resultSet = database.executeQuery("SELECT ID, Channel FROM Quotes WHERE Ordinal IS NULL ORDER BY ID LIMIT 1000");
+                    while(resultSet.next()) {
+                        String channel = resultSet.getString("Channel");
+                        Integer ordinal = nextOrdinals.get(channel);
+                        if(ordinal == null) ordinal = 1;
+                        rows.add(new Object[] { ordinal, resultSet.getInt("ID") });
+                        nextOrdinals.put(channel, ordinal + 1);
+                    }
+                    resultSet.close();
+                    if(rows.isEmpty()) break;
+                    database.executeBatch("UPDATE Quotes SET Ordinal = ? WHERE ID = ?", rows);
+                }
+                createIndex(database, "Quotes", "QuotesChannelOrdinal", "Channel, Ordinal", true);
+            }
+        });
+        migrations.add(new Migration(5, "Keep deleted quotes so their numbers are never given out again") {
+            protected void apply(Database database) throws SQLException {
+                if(!columnExists(database, "Quotes", "Deleted")) {
+                    database.executeUpdate("ALTER TABLE Quotes ADD COLUMN Deleted INT NOT NULL DEFAULT 0");
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies any migrations the database hasn't had applied yet
+     * @throws SQLException if the database cannot be migrated
+     */
+    public static void migrate() throws SQLException {
+        Database database = new Database();
+        try {
+            database.connect();
+        } catch (SQLException ex) {
+            throw new SQLException("Unable to connect to the database: " + ex.getMessage(), ex);
+        }
+        try {
+            database.executeUpdate("CREATE TABLE IF NOT EXISTS SchemaVersion(Version INT NOT NULL)");
+            int current = getVersion(database);
+            for(Migration migration : migrations) {
+                if(migration.version <= current) continue;
+                Configuration.getLogger().write(Level.INFO, "Migrating database to version " + migration.version + ": " + migration.description);
+                apply(database, migration, current == 0);
+                current = migration.version;
+            }
+        } finally {
+            database.disconnect();
+        }
+    }
+
+    /**
+     * Applies a migration and records its version in a single transaction
+     * @param database the database to apply the migration to
+     * @param migration the migration to apply
+     * @param first true if no version has been recorded yet, false if one has
+     * @throws SQLException if the migration fails, in which case it is rolled back
+     */
+    private static void apply(Database database, Migration migration, boolean first) throws SQLException {
+        Connection connection = database.getConnection();
+        boolean committed = false;
+        connection.setAutoCommit(false);
+        try {
+            migration.apply(database);
+            if(first) database.executeUpdate("INSERT INTO SchemaVersion(Version) VALUES (?)", migration.version);
+            else database.executeUpdate("UPDATE SchemaVersion SET Version = ?", migration.version);
+            connection.commit();
+            committed = true;
+        } catch (SQLException ex) {
+            throw new SQLException("Unable to migrate the database to version " + migration.version + ": " + ex.getMessage(), ex);
+        } finally {
+            if(!committed) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                }
+            }
+            // Turn auto-commit back on before the connection goes back to the pool
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Returns the schema version recorded in the database
+     * @param database the database to check
+     * @return the schema version, or 0 if none has been recorded
+     * @throws SQLException if the version cannot be read
+     */
+    private static int getVersion(Database database) throws SQLException {
+        ResultSet resultSet = database.executeQuery("SELECT MAX(Version) FROM SchemaVersion");
+        int version = resultSet.next() ? resultSet.getInt(1) : 0;
+        resultSet.close();
+        return version;
+    }
+
+    /**
+     * Creates an index unless one with the same name already exists
+     * @param database the database to create the index in
+     * @param table the table to index
+     * @param name the name of the index
+     * @param columns the columns to index, separated by commas
+     * @param unique true if the index should enforce unique values
+     * @throws SQLException if the index cannot be created
+     */
+    private static void createIndex(Database database, String table, String name, String columns, boolean unique) throws SQLException {
+        ResultSet indexes = database.getConnection().getMetaData().getIndexInfo(null, null, table, false, true);
+        try {
+            while(indexes.next()) {
+                if(name.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) return;
+            }
+        } finally {
+            indexes.close();
+        }
+        database.executeUpdate("CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + name + " ON " + table + "(" + columns + ")");
+    }
+
+    /**
+     * Checks to see if a table has a column
+     * @param database the database to check
+     * @param table the table to check
+     * @param column the column to look for
+     * @return true if the column exists, false if it does not
+     * @throws SQLException if the table cannot be inspected
+     */
+    private static boolean columnExists(Database database, String table, String column) throws SQLException {
+        ResultSet columns = database.getConnection().getMetaData().getColumns(null, null, table, null);
+        try {
+            while(columns.next()) {
+                if(column.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) return true;
+            }
+            return false;
+        } finally {
+            columns.close();
+        }
+    }
+
+    /**
+     * Checks to see if the bot is configured to use MySQL
+     * @return true if the bot is using MySQL, false if it is using SQLite
+     */
+    private static boolean isMySQL() {
+        return Configuration.getDatabaseDriver().equalsIgnoreCase("mysql");
+    }
+}
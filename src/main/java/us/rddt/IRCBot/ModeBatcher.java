@@ -0,0 +1,147 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.pircbotx.Channel;
+
+/**
+ * Collects mode changes made to a channel over a short window and sends them
+ * packed into as few MODE lines as the server allows, so that voicing or opping
+ * a number of users at once doesn't cost one line per user.
+ * 
+ * @author Ryan Morrison
+ */
+public class ModeBatcher {
+    /*
+     * Class variables.
+     */
+    private static final Map<String,PendingModes> pending = new HashMap<String,PendingModes>();
+    private static final int MAX_PARAMETERS_LENGTH = 400;
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ModeBatcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * The mode changes waiting to be sent to a single channel
+     */
+    private static final class PendingModes {
+        private final Channel channel;
+        private final List<String> modes = new ArrayList<String>();
+        private final List<String> parameters = new ArrayList<String>();
+
+        /**
+         * Class constructor
+         * @param channel the channel the mode changes are for
+         */
+        private PendingModes(Channel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Queues a mode change which takes a parameter, such as +o nick or +b hostmask
+     * @param channel the channel to change the mode on
+     * @param mode the mode change, such as +o
+     * @param parameter the parameter of the mode change
+     */
+    public static void setMode(final Channel channel, String mode, String parameter) {
+        long window = Configuration.getModeBatchWindow();
+        boolean isNew;
+        synchronized(pending) {
+            PendingModes modes = pending.get(channel.getName());
+            isNew = (modes == null);
+            if(isNew) {
+                modes = new PendingModes(channel);
+                pending.put(channel.getName(), modes);
+            }
+            modes.modes.add(mode);
+            modes.parameters.add(parameter);
+        }
+        if(window <= 0) {
+            flush(channel);
+        } else if(isNew) {
+            flusher.schedule(new Runnable() {
+                public void run() {
+                    flush(channel);
+                }
+            }, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends any mode changes waiting for a channel
+     * @param channel the channel to send mode changes for
+     */
+    public static void flush(Channel channel) {
+        PendingModes modes;
+        synchronized(pending) {
+            modes = pending.remove(channel.getName());
+        }
+        if(modes == null) return;
+        int maxModes = ServerSupport.getMaxModes();
+        StringBuilder changes = new StringBuilder();
+        StringBuilder parameters = new StringBuilder();
+        char lastSign = 0;
+        int count = 0;
+        for(int i = 0; i < modes.modes.size(); i++) {
+            String mode = modes.modes.get(i);
+            String parameter = modes.parameters.get(i);
+            // Start a new line when the server's limit is reached or the line would be too long
+            if(count > 0 && (count == maxModes || parameters.length() + parameter.length() >= MAX_PARAMETERS_LENGTH)) {
+                MessageQueue.setMode(modes.channel, changes.toString() + parameters.toString());
+                changes.setLength(0);
+                parameters.setLength(0);
+                lastSign = 0;
+                count = 0;
+            }
+            // Only repeat the sign when it changes, such as +oo-v
+            if(mode.charAt(0) != lastSign) {
+                lastSign = mode.charAt(0);
+                changes.append(lastSign);
+            }
+            changes.append(mode.substring(1));
+            parameters.append(' ').append(parameter);
+            count++;
+        }
+        if(count > 0) MessageQueue.setMode(modes.channel, changes.toString() + parameters.toString());
+    }
+}
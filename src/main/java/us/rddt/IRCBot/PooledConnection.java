@@ -0,0 +1,173 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A database connection held by the ConnectionPool, along with the statements
+ * which have been prepared on it. Statements are cached by their SQL so that
+ * handlers running the same queries over and over only prepare them once per
+ * connection.
+ * 
+ * @author Ryan Morrison
+ */
+public class PooledConnection {
+    /*
+     * Class variables.
+     */
+    private final Connection connection;
+    private final Map<String,PreparedStatement> statements;
+    private long idleSince = System.currentTimeMillis();
+    private static final AtomicLong cacheHits = new AtomicLong();
+    private static final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * Class constructor
+     * @param connection the connection to pool
+     * @param cacheSize the maximum number of prepared statements to keep cached
+     */
+    public PooledConnection(Connection connection, final int cacheSize) {
+        this.connection = connection;
+        // Access-ordered so that the least recently used statement is closed when the cache is full
+        this.statements = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest) {
+                if(size() <= cacheSize) return false;
+                closeStatement(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a prepared statement for the provided SQL, preparing it only if it
+     * isn't already cached on this connection
+     * @param sql the SQL to prepare
+     * @return the prepared statement, with its parameters cleared
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepareStatement(sql, false);
+    }
+
+    /**
+     * Returns a prepared statement for the provided SQL, preparing it only if it
+     * isn't already cached on this connection
+     * @param sql the SQL to prepare
+     * @param returnGeneratedKeys true if the statement should return the keys generated by an insert
+     * @return the prepared statement, with its parameters cleared
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepareStatement(String sql, boolean returnGeneratedKeys) throws SQLException {
+        String key = returnGeneratedKeys ? "RETURN_GENERATED_KEYS " + sql : sql;
+        PreparedStatement statement = statements.get(key);
+        if(statement != null && !statement.isClosed()) {
+            statement.clearParameters();
+            cacheHits.incrementAndGet();
+            return statement;
+        }
+        cacheMisses.incrementAndGet();
+        statement = returnGeneratedKeys ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : connection.prepareStatement(sql);
+        statements.put(key, statement);
+        return statement;
+    }
+
+    /**
+     * Closes every cached statement and the connection itself
+     */
+    public void close() {
+        for(Iterator<PreparedStatement> it = statements.values().iterator(); it.hasNext();) {
+            closeStatement(it.next());
+            it.remove();
+        }
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+        }
+    }
+
+    /**
+     * Closes a statement, ignoring any errors
+     * @param statement the statement to close
+     */
+    private static void closeStatement(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ex) {
+        }
+    }
+
+    /**
+     * Gets the database connection
+     * @return the database connection
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns the number of statements found in the cache across all connections
+     * @return the number of statements found in the cache
+     */
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Returns the number of statements which had to be prepared across all connections
+     * @return the number of statements which had to be prepared
+     */
+    public static long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Returns the time the connection was last returned to the pool
+     * @return the time in milliseconds the connection was last returned to the pool
+     */
+    public long getIdleSince() {
+        return idleSince;
+    }
+
+    /**
+     * Marks the connection as having been returned to the pool
+     */
+    public void markIdle() {
+        idleSince = System.currentTimeMillis();
+    }
+}
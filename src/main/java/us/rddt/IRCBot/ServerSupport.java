@@ -0,0 +1,112 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+/**
+ * Keeps track of the limits the server advertises in its ISUPPORT (005) replies
+ * upon connecting, so that outbound messages can take advantage of them. Servers
+ * which don't advertise a limit are assumed to support only the behaviour every
+ * IRC server supports.
+ * 
+ * @author Ryan Morrison
+ */
+public class ServerSupport {
+    /*
+     * Class variables.
+     */
+    private static volatile int maxMessageTargets = 1;
+    private static volatile int maxModes = 3;
+
+    /**
+     * Parses an ISUPPORT reply from the server
+     * @param response the reply from the server, beginning with our nick
+     */
+    public static void parse(String response) {
+        String[] tokens = response.split(" ");
+        // The first token is our nick, and the tokens end at the trailing description
+        for(int i = 1; i < tokens.length && !tokens[i].startsWith(":"); i++) {
+            String token = tokens[i];
+            int equals = token.indexOf('=');
+            String name = (equals == -1) ? token : token.substring(0, equals);
+            String value = (equals == -1) ? "" : token.substring(equals + 1);
+            if(name.equals("TARGMAX")) {
+                parseTargetLimits(value);
+            } else if(name.equals("MAXTARGETS")) {
+                maxMessageTargets = parseLimit(value, maxMessageTargets);
+            } else if(name.equals("MODES")) {
+                maxModes = parseLimit(value, maxModes);
+            }
+        }
+    }
+
+    /**
+     * Parses the per-command target limits of a TARGMAX token, such as PRIVMSG:4,NOTICE:4
+     * @param value the value of the TARGMAX token
+     */
+    private static void parseTargetLimits(String value) {
+        for(String limit : value.split(",")) {
+            int colon = limit.indexOf(':');
+            if(colon != -1 && limit.substring(0, colon).equalsIgnoreCase("PRIVMSG")) {
+                maxMessageTargets = parseLimit(limit.substring(colon + 1), maxMessageTargets);
+            }
+        }
+    }
+
+    /**
+     * Parses a numeric limit, where an empty value means there is no limit
+     * @param value the value to parse
+     * @param current the limit to keep if the value cannot be parsed
+     * @return the parsed limit
+     */
+    private static int parseLimit(String value, int current) {
+        if(value.isEmpty()) return Integer.MAX_VALUE;
+        try {
+            int limit = Integer.parseInt(value);
+            return (limit > 0) ? limit : current;
+        } catch (NumberFormatException ex) {
+            return current;
+        }
+    }
+
+    /**
+     * Returns the number of targets a single PRIVMSG may be sent to
+     * @return the number of targets a single PRIVMSG may be sent to
+     */
+    public static int getMaxMessageTargets() {
+        return maxMessageTargets;
+    }
+
+    /**
+     * Returns the number of mode changes with parameters allowed in a single MODE command
+     * @return the number of mode changes allowed in a single MODE command
+     */
+    public static int getMaxModes() {
+        return maxModes;
+    }
+}